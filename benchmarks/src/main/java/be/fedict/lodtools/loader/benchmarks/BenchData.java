@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.benchmarks;
+
+import be.fedict.lodtools.loader.StorageConfig;
+import be.fedict.lodtools.loader.helpers.DirProcessor;
+import be.fedict.lodtools.loader.helpers.FileUtil;
+import be.fedict.lodtools.loader.helpers.LoadBackend;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+
+/**
+ * Test data and an in-memory stand-in for the triple store
+ * 
+ * @author Bart.Hanssens
+ */
+public class BenchData implements LoadBackend, AutoCloseable {
+	public final static String REPO = "bench";
+	public final static String BASE = "http://example.com/id/";
+	
+	private final Path root;
+	private final Path processRoot;
+	private final Repository repo;
+	
+	/**
+	 * Generate N-Triples, using a limited number of predicates and classes
+	 * like most exported datasets
+	 * 
+	 * @param start number of the first subject
+	 * @param n number of subjects (five statements each)
+	 * @param duplicates percentage of duplicate subjects
+	 * @return N-Triples
+	 */
+	public static byte[] ntriples(int start, int n, int duplicates) {
+		StringBuilder sb = new StringBuilder(n * 400);
+		for (int i = 0; i < n; i++) {
+			int id = start + ((i % 100 < duplicates) ? i / 2 : i);
+			String s = "<" + BASE + "s" + id + "> ";
+			sb.append(s).append("<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> ")
+				.append("<http://www.w3.org/ns/org#Organization> .\n");
+			sb.append(s).append("<http://www.w3.org/2004/02/skos/core#prefLabel> \"")
+				.append("Organization ").append(id).append("\"@nl .\n");
+			sb.append(s).append("<http://www.w3.org/2004/02/skos/core#prefLabel> \"")
+				.append("Organisation ").append(id).append("\"@fr .\n");
+			sb.append(s).append("<http://purl.org/dc/terms/created> \"2017-01-0")
+				.append(1 + id % 9).append("\"^^<http://www.w3.org/2001/XMLSchema#date> .\n");
+			sb.append(s).append("<http://www.w3.org/ns/org#hasSite> <")
+				.append(BASE).append("site").append(id % 1000).append("> .\n");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Generate N-Triples, starting with the first subject
+	 * 
+	 * @param n number of subjects (five statements each)
+	 * @param duplicates percentage of duplicate subjects
+	 * @return N-Triples
+	 */
+	public static byte[] ntriples(int n, int duplicates) {
+		return ntriples(0, n, duplicates);
+	}
+	
+	/**
+	 * Generate a CSV file with one IRI per line
+	 * 
+	 * @param start number of the first subject
+	 * @param n number of lines
+	 * @return CSV file
+	 */
+	public static byte[] csv(int start, int n) {
+		StringBuilder sb = new StringBuilder(n * 40);
+		for (int i = start; i < start + n; i++) {
+			sb.append('<').append(BASE).append('s').append(i).append(">\n");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Generate a CSV file with one IRI per line, starting with the first subject
+	 * 
+	 * @param n number of lines
+	 * @return CSV file
+	 */
+	public static byte[] csv(int n) {
+		return csv(0, n);
+	}
+	
+	/**
+	 * Compress data with gzip
+	 * 
+	 * @param data uncompressed data
+	 * @return compressed data
+	 * @throws IOException 
+	 */
+	public static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(bos)) {
+			os.write(data);
+		}
+		return bos.toByteArray();
+	}
+	
+	/**
+	 * Write a zip file
+	 * 
+	 * @param file zip file
+	 * @param entries names and content of the entries
+	 * @throws IOException 
+	 */
+	public static void zip(Path file, Map<String,byte[]> entries) throws IOException {
+		try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(file))) {
+			for (Map.Entry<String,byte[]> e: entries.entrySet()) {
+				zos.putNextEntry(new ZipEntry(e.getKey()));
+				zos.write(e.getValue());
+				zos.closeEntry();
+			}
+		}
+	}
+	
+	/**
+	 * Get the root directory for uploads
+	 * 
+	 * @return directory
+	 */
+	public Path getProcessRoot() {
+		return processRoot;
+	}
+	
+	/**
+	 * Get the directory of the benchmark repository
+	 * 
+	 * @return directory
+	 */
+	public Path getRepoDir() {
+		return processRoot.resolve(REPO);
+	}
+	
+	/**
+	 * Create a processor loading into the in-memory repository
+	 * 
+	 * @param cfg storage configuration, the process root is set here
+	 * @return processor
+	 */
+	public DirProcessor getProcessor(StorageConfig cfg) {
+		cfg.setProcessRoot(processRoot.toString());
+		return new DirProcessor(this, cfg, new MetricRegistry());
+	}
+	
+	/**
+	 * Remove all statements from the in-memory repository
+	 */
+	public void clear() {
+		try (RepositoryConnection con = repo.getConnection()) {
+			con.clear();
+		}
+	}
+	
+	/**
+	 * Get the number of statements in the in-memory repository
+	 * 
+	 * @return number of statements
+	 */
+	public long size() {
+		try (RepositoryConnection con = repo.getConnection()) {
+			return con.size();
+		}
+	}
+	
+	@Override
+	public Set<String> getRepositoryNames() {
+		return Collections.singleton(REPO);
+	}
+	
+	@Override
+	public Repository getRepository(String name) {
+		return REPO.equals(name) ? repo : null;
+	}
+	
+	@Override
+	public void shutDown() {
+		repo.shutDown();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		shutDown();
+		try (Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @throws IOException 
+	 */
+	public BenchData() throws IOException {
+		this.root = Files.createTempDirectory("lod-bench");
+		this.processRoot = root.resolve("load");
+		for (String dir: new String[] { FileUtil.DIR_DONE, FileUtil.DIR_FAILED, 
+				FileUtil.DIR_PROCESS, FileUtil.DIR_QUERY, "upload" }) {
+			Files.createDirectories(processRoot.resolve(REPO).resolve(dir));
+		}
+		this.repo = new SailRepository(new MemoryStore());
+		this.repo.initialize();
+	}
+}
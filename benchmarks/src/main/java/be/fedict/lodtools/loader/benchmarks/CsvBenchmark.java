@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.benchmarks;
+
+import be.fedict.lodtools.loader.StorageConfig;
+import be.fedict.lodtools.loader.helpers.DirProcessor;
+import be.fedict.lodtools.loader.helpers.FileUtil;
+import be.fedict.lodtools.loader.helpers.JobStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting CSV lines to bindings and executing the SPARQL update, 
+ * against an in-memory repository
+ * 
+ * @author Bart.Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvBenchmark {
+	private final static String NAME = "csv.zip";
+	private final static String QUERY = 
+		"INSERT { ?id a <http://www.w3.org/ns/org#Organization> } WHERE { }";
+	
+	@Param({"1", "100"})
+	public int batchSize;
+	
+	private BenchData data;
+	private DirProcessor processor;
+	private Path zip;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = new BenchData();
+		StorageConfig cfg = new StorageConfig();
+		cfg.setBatchSize(batchSize);
+		processor = data.getProcessor(cfg);
+		
+		Map<String,byte[]> entries = new LinkedHashMap<>();
+		entries.put("ids" + FileUtil.EXT_QRY, QUERY.getBytes(StandardCharsets.UTF_8));
+		entries.put("ids" + FileUtil.EXT_CSV, BenchData.csv(5_000));
+		zip = data.getProcessRoot().resolve(NAME);
+		BenchData.zip(zip, entries);
+	}
+	
+	@Setup(Level.Invocation)
+	public void prepare() throws IOException {
+		data.clear();
+		Files.copy(zip, data.getRepoDir().resolve(NAME), StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(data.getRepoDir().resolve(FileUtil.DIR_DONE).resolve(NAME));
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		processor.close();
+		data.close();
+	}
+	
+	@Benchmark
+	public boolean processCsv() {
+		JobStatus job = new JobStatus(BenchData.REPO, NAME, JobStatus.State.PROCESSING, j -> {});
+		return processor.processFile(BenchData.REPO, NAME, job);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.benchmarks;
+
+import be.fedict.lodtools.loader.helpers.FileUtil;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Storing an upload and reading the (compressed) entries of a zip file
+ * 
+ * @author Bart.Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileUtilBenchmark {
+	private BenchData data;
+	private FileUtil util;
+	private byte[] upload;
+	private Path zip;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = new BenchData();
+		util = new FileUtil(data.getProcessRoot().toString(), new MetricRegistry());
+		
+		Map<String,byte[]> entries = new LinkedHashMap<>();
+		entries.put("data.nt.gz", BenchData.gzip(BenchData.ntriples(50_000, 0)));
+		entries.put("data.nt", BenchData.ntriples(50_000, 0));
+		zip = data.getProcessRoot().resolve("bench.zip");
+		BenchData.zip(zip, entries);
+		upload = Files.readAllBytes(zip);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		data.close();
+	}
+	
+	@Benchmark
+	public String store() {
+		return util.store(BenchData.REPO, new ByteArrayInputStream(upload), "upload.zip");
+	}
+	
+	@Benchmark
+	public long readEntries() throws IOException {
+		long bytes = 0;
+		byte[] buf = new byte[64 * 1024];
+		try (ZipFile z = new ZipFile(zip.toFile())) {
+			for (ZipEntry e: FileUtil.getEntries(z)) {
+				try (InputStream is = FileUtil.decompress(e.getName(), z.getInputStream(e))) {
+					for (int n = is.read(buf); n > 0; n = is.read(buf)) {
+						bytes += n;
+					}
+				}
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.benchmarks;
+
+import be.fedict.lodtools.loader.helpers.InterningValueFactory;
+import be.fedict.lodtools.loader.helpers.ParallelParser;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing N-Triples, as done when loading files with a checkpoint or with
+ * more than one parser thread
+ * 
+ * @author Bart.Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+	@Param({"0", "100000"})
+	public int internSize;
+	
+	@Param({"4"})
+	public int threads;
+	
+	private byte[] nt;
+	private ValueFactory vf;
+	private ParallelParser parallel;
+	
+	/**
+	 * Handler passing statements to the black hole
+	 */
+	private static class Sink extends AbstractRDFHandler {
+		private final Blackhole bh;
+		
+		@Override
+		public void handleStatement(Statement st) {
+			bh.consume(st);
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param bh black hole
+		 */
+		public Sink(Blackhole bh) {
+			this.bh = bh;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		nt = BenchData.ntriples(20_000, 0);
+		vf = (internSize > 0) 
+				? new InterningValueFactory(internSize, new MetricRegistry())
+				: SimpleValueFactory.getInstance();
+		parallel = new ParallelParser(threads, vf);
+	}
+	
+	@Benchmark
+	public void parse(Blackhole bh) throws IOException {
+		RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES, vf);
+		parser.setRDFHandler(new Sink(bh));
+		parser.parse(new ByteArrayInputStream(nt), "");
+	}
+	
+	@Benchmark
+	public void parseParallel(Blackhole bh) throws IOException {
+		parallel.parse(new ByteArrayInputStream(nt), RDFFormat.NTRIPLES, new Sink(bh));
+	}
+}
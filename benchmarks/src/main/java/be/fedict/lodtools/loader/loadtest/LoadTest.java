@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.loadtest;
+
+import be.fedict.lodtools.loader.App;
+import be.fedict.lodtools.loader.benchmarks.BenchData;
+import be.fedict.lodtools.loader.helpers.FileUtil;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.http.HTTPRepository;
+
+/**
+ * End-to-end load test: starts a local RDF4J server and the loader, 
+ * and sends concurrent uploads of generated zip files.
+ * 
+ * Settings are passed as system properties, e.g. -Duploads=20.
+ * 
+ * @author Bart.Hanssens
+ */
+public class LoadTest {
+	private final static String REPO = "bench";
+	private final static String USER = "loadtest";
+	private final static String PASS = "loadtest";
+	private final static String QUERY = 
+		"INSERT { ?id a <http://www.w3.org/ns/org#FormalOrganization> } WHERE { }";
+	private final static long MAX_WAIT = 60;
+	
+	private final static ObjectMapper MAPPER = new ObjectMapper();
+	
+	private final int uploads = Integer.getInteger("uploads", 20);
+	private final int concurrency = Integer.getInteger("concurrency", 4);
+	private final int subjects = Integer.getInteger("subjects", 10_000);
+	private final int lines = Integer.getInteger("lines", 1_000);
+	private final int duplicates = Integer.getInteger("duplicates", 0);
+	private final int port = Integer.getInteger("port", 18080);
+	private final int storePort = Integer.getInteger("storePort", 18090);
+	private final Path war = Paths.get(System.getProperty("war", "target/rdf4j-server.war"));
+	private final String storage = System.getProperty("storage", "");
+	
+	private final Timer upload = new Timer(new UniformReservoir());
+	private final Timer complete = new Timer(new UniformReservoir());
+	
+	private final Path root;
+	private final String auth;
+	
+	/**
+	 * Write a YAML configuration file for the loader
+	 * 
+	 * @param sparqlPoint URL of the triple store
+	 * @return configuration file
+	 * @throws IOException 
+	 */
+	private Path writeConfig(String sparqlPoint) throws IOException {
+		StringBuilder yml = new StringBuilder();
+		yml.append("auth:\n")
+			.append("  username: ").append(USER).append('\n')
+			.append("  password: ").append(PASS).append('\n')
+			.append("storage:\n")
+			.append("  sparqlPoint: ").append(sparqlPoint).append('\n')
+			.append("  processRoot: ").append(root.resolve("load")).append('\n');
+		// extra storage settings, e.g. "chunkSize: 10000, parseThreads: 4"
+		for (String s: storage.split(",")) {
+			if (!s.trim().isEmpty()) {
+				yml.append("  ").append(s.trim()).append('\n');
+			}
+		}
+		yml.append("server:\n")
+			.append("  applicationConnectors:\n")
+			.append("    - type: http\n")
+			.append("      port: ").append(port).append('\n')
+			.append("  adminConnectors:\n")
+			.append("    - type: http\n")
+			.append("      port: ").append(port + 1).append('\n')
+			.append("  requestLog:\n")
+			.append("    appenders: []\n")
+			.append("logging:\n")
+			.append("  level: WARN\n");
+		
+		Path cfg = root.resolve("loadtest.yml");
+		Files.write(cfg, yml.toString().getBytes(StandardCharsets.UTF_8));
+		return cfg;
+	}
+	
+	/**
+	 * Generate zip files with N-Triples, a CSV file and its query
+	 * 
+	 * @return list of zip files
+	 * @throws IOException 
+	 */
+	private List<Path> generate() throws IOException {
+		Path dir = Files.createDirectories(root.resolve("zips"));
+		List<Path> zips = new ArrayList<>(uploads);
+		
+		for (int i = 0; i < uploads; i++) {
+			Map<String,byte[]> entries = new LinkedHashMap<>();
+			entries.put("data.nt.gz", 
+				BenchData.gzip(BenchData.ntriples(i * subjects, subjects, duplicates)));
+			entries.put("ids" + FileUtil.EXT_QRY, QUERY.getBytes(StandardCharsets.UTF_8));
+			entries.put("ids" + FileUtil.EXT_CSV, BenchData.csv(i * subjects, lines));
+			Path zip = dir.resolve("upload-" + i + FileUtil.EXT_ZIP);
+			BenchData.zip(zip, entries);
+			zips.add(zip);
+		}
+		return zips;
+	}
+	
+	/**
+	 * Open an authenticated connection to the loader
+	 * 
+	 * @param path path of the resource
+	 * @return connection
+	 * @throws IOException 
+	 */
+	private HttpURLConnection open(String path) throws IOException {
+		URL url = new URL("http://localhost:" + port + "/_upload/" + path);
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestProperty("Authorization", auth);
+		conn.setReadTimeout((int) TimeUnit.SECONDS.toMillis(MAX_WAIT * 2));
+		return conn;
+	}
+	
+	/**
+	 * Upload a zip file, retrying when the loader is busy
+	 * 
+	 * @param zip zip file
+	 * @return HTTP status code
+	 * @throws IOException
+	 * @throws InterruptedException 
+	 */
+	private int upload(Path zip) throws IOException, InterruptedException {
+		String name = zip.getFileName().toString();
+		while (true) {
+			HttpURLConnection conn = open("load/" + REPO + "/" + name);
+			conn.setRequestMethod("POST");
+			conn.setRequestProperty("Content-Type", "application/zip");
+			conn.setDoOutput(true);
+			conn.setFixedLengthStreamingMode(Files.size(zip));
+			
+			long start = System.nanoTime();
+			try (OutputStream os = conn.getOutputStream()) {
+				Files.copy(zip, os);
+			}
+			int code = conn.getResponseCode();
+			if (code != 503 && code != 429) {
+				upload.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				return code;
+			}
+			long retry = conn.getHeaderFieldLong("Retry-After", 1);
+			conn.disconnect();
+			TimeUnit.SECONDS.sleep(retry);
+		}
+	}
+	
+	/**
+	 * Wait until the loader has processed the zip file
+	 * 
+	 * @param zip zip file
+	 * @return status
+	 * @throws IOException 
+	 */
+	private JsonNode waitFor(Path zip) throws IOException {
+		String name = zip.getFileName().toString();
+		while (true) {
+			HttpURLConnection conn = open("status/" + REPO + "/" + name + "?wait=" + MAX_WAIT);
+			int code = conn.getResponseCode();
+			try (InputStream is = (code < 400) ? conn.getInputStream() : conn.getErrorStream()) {
+				if (code == 404 || is == null) {
+					throw new IOException("Unknown upload " + name);
+				}
+				JsonNode status = MAPPER.readTree(is);
+				if (status.path("completed").asBoolean()) {
+					return status;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Upload a zip and wait for the result
+	 * 
+	 * @param zip zip file
+	 * @return true when loaded successfully
+	 * @throws Exception 
+	 */
+	private boolean run(Path zip) throws Exception {
+		long start = System.nanoTime();
+		int code = upload(zip);
+		if (code != 202) {
+			System.err.println("Upload of " + zip.getFileName() + " failed: " + code);
+			return false;
+		}
+		JsonNode status = waitFor(zip);
+		complete.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		return "DONE".equals(status.path("state").asText());
+	}
+	
+	/**
+	 * Get the number of statements in the repository
+	 * 
+	 * @param url URL of the triple store
+	 * @return number of statements
+	 */
+	private static long size(String url) {
+		HTTPRepository repo = new HTTPRepository(url, REPO);
+		repo.initialize();
+		try (RepositoryConnection con = repo.getConnection()) {
+			return con.size();
+		} finally {
+			repo.shutDown();
+		}
+	}
+	
+	/**
+	 * Print latency percentiles in milliseconds
+	 * 
+	 * @param label label
+	 * @param timer timer
+	 */
+	private static void report(String label, Timer timer) {
+		Snapshot s = timer.getSnapshot();
+		double ms = TimeUnit.MILLISECONDS.toNanos(1);
+		System.out.printf("%-10s n=%d p50=%.0f p90=%.0f p99=%.0f max=%.0f ms%n", label,
+				timer.getCount(), s.getMedian() / ms, s.getValue(0.9) / ms, 
+				s.get99thPercentile() / ms, s.getMax() / ms);
+	}
+	
+	/**
+	 * Run the load test
+	 * 
+	 * @throws Exception 
+	 */
+	public void run() throws Exception {
+		List<Path> zips = generate();
+		
+		try (StandInServer store = new StandInServer(war, root.resolve("store"), storePort)) {
+			store.start();
+			store.createRepository(REPO);
+			for (String dir: new String[] { "", "upload", FileUtil.DIR_PROCESS, 
+					FileUtil.DIR_DONE, FileUtil.DIR_FAILED, FileUtil.DIR_QUERY }) {
+				Files.createDirectories(root.resolve("load").resolve(REPO).resolve(dir));
+			}
+			new App().run("server", writeConfig(store.getUrl()).toString());
+			
+			long before = size(store.getUrl());
+			long start = System.nanoTime();
+			
+			ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (Path zip: zips) {
+				results.add(pool.submit(() -> run(zip)));
+			}
+			int failed = 0;
+			for (Future<Boolean> f: results) {
+				if (!f.get()) {
+					failed++;
+				}
+			}
+			pool.shutdown();
+			
+			double secs = (System.nanoTime() - start) / 1e9;
+			long triples = size(store.getUrl()) - before;
+			
+			System.out.printf("%d uploads (%d failed), %d concurrent, %.1f s%n", 
+										uploads, failed, concurrency, secs);
+			report("upload", upload);
+			report("complete", complete);
+			System.out.printf("%d triples, %.0f triples/s%n", triples, triples / secs);
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @throws IOException 
+	 */
+	public LoadTest() throws IOException {
+		this.root = Files.createTempDirectory("lod-loadtest");
+		this.auth = "Basic " + Base64.getEncoder().encodeToString(
+							(USER + ":" + PASS).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Main
+	 * 
+	 * @param args
+	 * @throws Exception 
+	 */
+	public static void main(String[] args) throws Exception {
+		new LoadTest().run();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.loadtest;
+
+import java.nio.file.Path;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+import org.eclipse.rdf4j.repository.config.RepositoryConfig;
+import org.eclipse.rdf4j.repository.manager.RemoteRepositoryManager;
+import org.eclipse.rdf4j.repository.sail.config.SailRepositoryConfig;
+import org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreConfig;
+
+/**
+ * Local stand-in for the triple store: the RDF4J server web application
+ * running in an embedded Jetty, using native stores.
+ * 
+ * @author Bart.Hanssens
+ */
+public class StandInServer implements AutoCloseable {
+	private final static String CONTEXT = "/rdf4j-server";
+	
+	private final Server server;
+	private final String url;
+	
+	/**
+	 * Get the URL of the server
+	 * 
+	 * @return URL
+	 */
+	public String getUrl() {
+		return url;
+	}
+	
+	/**
+	 * Create a native store repository, if it does not exist yet
+	 * 
+	 * @param name repository name
+	 */
+	public void createRepository(String name) {
+		RemoteRepositoryManager mgr = new RemoteRepositoryManager(url);
+		mgr.initialize();
+		try {
+			if (!mgr.hasRepositoryConfig(name)) {
+				mgr.addRepositoryConfig(new RepositoryConfig(name, 
+								new SailRepositoryConfig(new NativeStoreConfig())));
+			}
+		} finally {
+			mgr.shutDown();
+		}
+	}
+	
+	/**
+	 * Start the server
+	 * 
+	 * @throws Exception 
+	 */
+	public void start() throws Exception {
+		server.start();
+	}
+	
+	@Override
+	public void close() throws Exception {
+		server.stop();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param war RDF4J server web application archive
+	 * @param dataDir directory for the native stores
+	 * @param port HTTP port
+	 */
+	public StandInServer(Path war, Path dataDir, int port) {
+		System.setProperty("org.eclipse.rdf4j.appdata.basedir", dataDir.toString());
+		
+		WebAppContext ctx = new WebAppContext();
+		ctx.setContextPath(CONTEXT);
+		ctx.setWar(war.toString());
+		ctx.setTempDirectory(dataDir.resolve("webapp").toFile());
+		ctx.setThrowUnavailableOnStartupException(true);
+		
+		this.server = new Server(port);
+		this.server.setHandler(ctx);
+		this.url = "http://localhost:" + port + CONTEXT;
+	}
+}
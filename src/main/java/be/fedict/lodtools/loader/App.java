@@ -29,19 +29,25 @@ import be.fedict.lodtools.loader.auth.DummyUser;
 import be.fedict.lodtools.loader.auth.UpdateAuth;
 import be.fedict.lodtools.loader.health.RdfStoreHealthCheck;
 import be.fedict.lodtools.loader.helpers.FileUtil;
+import be.fedict.lodtools.loader.helpers.JobEvents;
+import be.fedict.lodtools.loader.helpers.HttpBackend;
+import be.fedict.lodtools.loader.helpers.ManagedBackend;
 import be.fedict.lodtools.loader.helpers.ManagedProcessor;
-import be.fedict.lodtools.loader.helpers.ManagedRepositoryManager;
+import be.fedict.lodtools.loader.helpers.UploadLimiter;
 import be.fedict.lodtools.loader.resources.UploadResource;
 
 import io.dropwizard.Application;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
+import io.dropwizard.client.HttpClientBuilder;
 import io.dropwizard.setup.Environment;
-import org.eclipse.rdf4j.repository.Repository;
+import org.apache.http.client.HttpClient;
 
 import org.eclipse.rdf4j.repository.manager.RemoteRepositoryManager;
 import org.eclipse.rdf4j.repository.manager.RepositoryProvider;
 
+import org.glassfish.jersey.media.sse.SseFeature;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,23 +75,28 @@ public class App extends Application<AppConfig> {
 		String endpoint = storage.getSparqlPoint();
 		RemoteRepositoryManager mgr = 
 				(RemoteRepositoryManager) RepositoryProvider.getRepositoryManager(endpoint);
+		// pooled HTTP client, shared by loader and health checks
+		HttpClient client = new HttpClientBuilder(env)
+									.using(storage.getHttpClient()).build("rdf4j");
+		mgr.setHttpClient(client);
 		if (storage.getUsername() != null) {
 			mgr.setUsernameAndPassword(storage.getUsername(), storage.getPassword());
 			LOG.info("Using username and pasword for storage");
 		}
-		mgr.initialize();
 		
 		// Managed resource
-		env.lifecycle().manage(new ManagedRepositoryManager(mgr));	
+		ManagedBackend backend = new ManagedBackend(new HttpBackend(mgr), storage);
+		env.lifecycle().manage(backend);
 
 		// Monitoring
-		for (Repository repo: mgr.getAllRepositories()) {
-			RdfStoreHealthCheck check = new RdfStoreHealthCheck(repo);
-			env.healthChecks().register(repo.toString(), check);
+		for (String name: backend.getRepositoryNames()) {
+			RdfStoreHealthCheck check = new RdfStoreHealthCheck(backend.getRepository(name));
+			env.healthChecks().register(name, check);
 		}
 		
 		// Loader
-		env.lifecycle().manage(new ManagedProcessor(mgr, storage.getProcessRoot()));
+		ManagedProcessor processor = new ManagedProcessor(backend, storage, env.metrics());
+		env.lifecycle().manage(processor);
 		
 		// Authentication
 		AuthConfig auth = config.getAuthConfig();
@@ -95,8 +106,16 @@ public class App extends Application<AppConfig> {
 							new UpdateAuth(auth.getUsername(), auth.getPassword()))
 						.buildAuthFilter()));
 		// Upload page/resource
+		UploadLimiter limiter = new UploadLimiter(storage.getMaxUploads(), 
+												storage.getUploadRate());
+		env.lifecycle().manage(limiter);
+		JobEvents events = new JobEvents(processor.getIndex(), env.getObjectMapper());
+		env.lifecycle().manage(events);
+		env.jersey().register(SseFeature.class);
 		env.jersey().register(new UploadResource(
-										new FileUtil(storage.getProcessRoot())));
+				new FileUtil(storage.getProcessRoot(), env.metrics()), 
+				processor.getQueue(), limiter,
+				processor.getIndex(), events));
 	}
 	
 	/**
@@ -25,7 +25,16 @@
  */
 package be.fedict.lodtools.loader;
 
+import be.fedict.lodtools.loader.helpers.LoadBackend;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.client.HttpClientConfiguration;
+import io.dropwizard.util.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import org.hibernate.validator.constraints.URL;
 
@@ -44,6 +53,80 @@ public class StorageConfig {
     @NotNull
 	private String processRoot;
 	
+	@Min(1)
+	private int batchSize = 1;
+	
+	@Min(1)
+	private int maxConcurrent = 2;
+	
+	@Min(0)
+	private int maxConcurrentBulk = 0;
+	
+	@Min(0)
+	private int maxQueuedBulk = 0;
+	
+	@Min(0)
+	private long chunkSize = 0;
+	
+	@Min(1)
+	private int parseThreads = 1;
+	
+	@Min(0)
+	private int validateThreads = 0;
+	
+	@Min(0)
+	private long maxEntrySize = 0;
+	
+	@Min(0)
+	private long scanInterval = 60;
+	
+	@Min(1)
+	private int maxUploads = 4;
+	
+	@Min(0)
+	private long uploadRate = 0;
+	
+	@Min(0)
+	private int maxJobs = 10000;
+	
+	@Min(1000)
+	private int sortLines = 1_000_000;
+
+	@Min(1000)
+	private long sortChars = 100_000_000;
+
+	@Min(0)
+	private int internSize = 0;
+
+	private boolean dedup = false;
+	private String sortDir;
+
+	@NotNull
+	private Map<String,LoadBackend.Type> backends = new HashMap<>();
+	private String nativeRoot;
+
+	@Valid
+	@NotNull
+	private HttpClientConfiguration httpClient = defaultHttpClient();
+
+	/**
+	 * Default HTTP client settings, with longer timeouts than the Dropwizard
+	 * defaults since loading and committing large files can take a while.
+	 * 
+	 * @return HTTP client configuration
+	 */
+	private static HttpClientConfiguration defaultHttpClient() {
+		HttpClientConfiguration cfg = new HttpClientConfiguration();
+		cfg.setMaxConnections(64);
+		cfg.setMaxConnectionsPerRoute(16);
+		cfg.setKeepAlive(Duration.seconds(60));
+		cfg.setTimeout(Duration.minutes(30));
+		cfg.setConnectionTimeout(Duration.seconds(10));
+		cfg.setConnectionRequestTimeout(Duration.seconds(30));
+		cfg.setValidateAfterInactivityPeriod(Duration.seconds(2));
+		cfg.setUserAgent(Optional.of("lod-loader"));
+		return cfg;
+	}
 
 	@JsonProperty
 	public String getSparqlPoint() {
@@ -84,4 +167,204 @@ public class StorageConfig {
 	public void setProcessRoot(String processRoot) {
 		this.processRoot = processRoot;
 	}
+
+	@JsonProperty
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@JsonProperty
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	@JsonProperty
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	@JsonProperty
+	public void setMaxConcurrent(int maxConcurrent) {
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	@JsonProperty
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	@JsonProperty
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	@JsonProperty
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	@JsonProperty
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	@JsonProperty
+	public long getScanInterval() {
+		return scanInterval;
+	}
+
+	@JsonProperty
+	public void setScanInterval(long scanInterval) {
+		this.scanInterval = scanInterval;
+	}
+
+	@JsonProperty
+	public int getMaxUploads() {
+		return maxUploads;
+	}
+
+	@JsonProperty
+	public void setMaxUploads(int maxUploads) {
+		this.maxUploads = maxUploads;
+	}
+
+	@JsonProperty
+	public long getUploadRate() {
+		return uploadRate;
+	}
+
+	@JsonProperty
+	public void setUploadRate(long uploadRate) {
+		this.uploadRate = uploadRate;
+	}
+
+	@JsonProperty
+	public int getMaxJobs() {
+		return maxJobs;
+	}
+
+	@JsonProperty
+	public void setMaxJobs(int maxJobs) {
+		this.maxJobs = maxJobs;
+	}
+
+	@JsonProperty
+	public int getSortLines() {
+		return sortLines;
+	}
+
+	@JsonProperty
+	public void setSortLines(int sortLines) {
+		this.sortLines = sortLines;
+	}
+
+	@JsonProperty
+	public boolean getDedup() {
+		return dedup;
+	}
+
+	@JsonProperty
+	public void setDedup(boolean dedup) {
+		this.dedup = dedup;
+	}
+
+	@JsonProperty
+	public String getSortDir() {
+		return sortDir;
+	}
+
+	@JsonProperty
+	public void setSortDir(String sortDir) {
+		this.sortDir = sortDir;
+	}
+
+	@JsonProperty
+	public int getInternSize() {
+		return internSize;
+	}
+
+	@JsonProperty
+	public void setInternSize(int internSize) {
+		this.internSize = internSize;
+	}
+
+	@JsonProperty
+	public HttpClientConfiguration getHttpClient() {
+		return httpClient;
+	}
+
+	@JsonProperty
+	public void setHttpClient(HttpClientConfiguration httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	@JsonProperty
+	public Map<String,LoadBackend.Type> getBackends() {
+		return backends;
+	}
+
+	@JsonProperty
+	public void setBackends(Map<String,LoadBackend.Type> backends) {
+		this.backends = backends;
+	}
+
+	@JsonProperty
+	public String getNativeRoot() {
+		return nativeRoot;
+	}
+
+	@JsonProperty
+	public void setNativeRoot(String nativeRoot) {
+		this.nativeRoot = nativeRoot;
+	}
+
+	@JsonProperty
+	public int getValidateThreads() {
+		return validateThreads;
+	}
+
+	@JsonProperty
+	public void setValidateThreads(int validateThreads) {
+		this.validateThreads = validateThreads;
+	}
+
+	@JsonProperty
+	public int getMaxConcurrentBulk() {
+		return maxConcurrentBulk;
+	}
+
+	@JsonProperty
+	public void setMaxConcurrentBulk(int maxConcurrentBulk) {
+		this.maxConcurrentBulk = maxConcurrentBulk;
+	}
+
+	@JsonProperty
+	public int getMaxQueuedBulk() {
+		return maxQueuedBulk;
+	}
+
+	@JsonProperty
+	public void setMaxQueuedBulk(int maxQueuedBulk) {
+		this.maxQueuedBulk = maxQueuedBulk;
+	}
+
+	@JsonProperty
+	public long getSortChars() {
+		return sortChars;
+	}
+
+	@JsonProperty
+	public void setSortChars(long sortChars) {
+		this.sortChars = sortChars;
+	}
+
+	@JsonProperty
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	@JsonProperty
+	public void setMaxEntrySize(long maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+	}
 }
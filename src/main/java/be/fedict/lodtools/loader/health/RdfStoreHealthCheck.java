@@ -26,7 +26,9 @@
 package be.fedict.lodtools.loader.health;
 
 import com.codahale.metrics.health.HealthCheck;
+import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
 
 /**
  * Check if triple store can be reached
@@ -38,9 +40,12 @@ public class RdfStoreHealthCheck extends HealthCheck {
 	
 	@Override
 	protected Result check() throws Exception {
-		return repo.getConnection().isOpen() 
+		// actually send a (cheap) query, getting a connection is not enough
+		try (RepositoryConnection con = repo.getConnection()) {
+			return con.prepareBooleanQuery(QueryLanguage.SPARQL, "ASK {}").evaluate() 
 								? Result.healthy() 
 								: Result.unhealthy("Triplestore unreachable");
+		}
 	}
 	
 	/**
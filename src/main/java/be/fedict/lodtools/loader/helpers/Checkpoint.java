@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keep track of the last committed position when loading a zip file in chunks,
+ * so a failed load can be resumed instead of restarting from zero.
+ * 
+ * @author Bart.Hanssens
+ */
+public class Checkpoint {
+	private final static Logger LOG = LoggerFactory.getLogger(Checkpoint.class);
+	
+	private final static String ZIP = "zip";
+	private final static String ENTRY = "entry";
+	private final static String COUNT = "count";
+	
+	private final static long DONE = -1;
+	
+	private final Path file;
+	private final String fingerprint;
+	
+	private String entry = "";
+	private long count = 0;
+
+	/**
+	 * Check if an entry of the zip has already been completely processed
+	 * 
+	 * @param name name of the zip entry
+	 * @return true if entry can be skipped
+	 */
+	public boolean isDone(String name) {
+		int cmp = name.compareTo(entry);
+		return (cmp < 0) || (cmp == 0 && count == DONE);
+	}
+	
+	/**
+	 * Get the number of items (statements, lines) of an entry already committed
+	 * 
+	 * @param name name of the zip entry
+	 * @return number of items
+	 */
+	public long getCount(String name) {
+		return (name.equals(entry) && count > 0) ? count : 0;
+	}
+	
+	/**
+	 * Save the number of items of an entry committed so far
+	 * 
+	 * @param name name of the zip entry
+	 * @param count number of items
+	 * @throws IOException 
+	 */
+	public void save(String name, long count) throws IOException {
+		this.entry = name;
+		this.count = count;
+		
+		Properties p = new Properties();
+		p.setProperty(ZIP, fingerprint);
+		p.setProperty(ENTRY, entry);
+		p.setProperty(COUNT, String.valueOf(count));
+		
+		Path tmp = Paths.get(file.toString() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			p.store(os, null);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, 
+								StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Mark an entry as completely processed
+	 * 
+	 * @param name name of the zip entry
+	 * @throws IOException 
+	 */
+	public void done(String name) throws IOException {
+		save(name, DONE);
+	}
+	
+	/**
+	 * Remove the checkpoint file
+	 */
+	public void delete() {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException ex) {
+			LOG.error("Could not remove checkpoint {}", file);
+		}
+	}
+	
+	/**
+	 * Constructor, reading the previous checkpoint (if any).
+	 * 
+	 * A checkpoint for a zip file with different contents is ignored.
+	 * 
+	 * @param file checkpoint file
+	 * @param fingerprint fingerprint of the contents of the zip file
+	 * @throws IOException 
+	 */
+	public Checkpoint(Path file, String fingerprint) throws IOException {
+		this.file = file;
+		this.fingerprint = fingerprint;
+		
+		if (!Files.exists(file)) {
+			return;
+		}
+		Properties p = new Properties();
+		try (InputStream is = Files.newInputStream(file)) {
+			p.load(is);
+		}
+		if (fingerprint.equals(p.getProperty(ZIP))) {
+			this.entry = p.getProperty(ENTRY, "");
+			this.count = Long.valueOf(p.getProperty(COUNT, "0"));
+			LOG.info("Resuming from {} at {}", entry, count);
+		} else {
+			LOG.warn("Ignoring checkpoint {}, contents of zip changed", file);
+		}
+	}
+}
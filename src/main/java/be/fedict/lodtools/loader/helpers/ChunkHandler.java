@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.IOException;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+/**
+ * Add statements to a repository, committing every N statements
+ * 
+ * @author Bart.Hanssens
+ */
+public class ChunkHandler extends AbstractRDFHandler {
+	private final LoadContext ctx;
+	private final RepositoryConnection con;
+	private final long chunkSize;
+	private final String name;
+	private final long skip;
+	
+	private long count = 0;
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		// already committed in a previous run
+		if (++count <= skip) {
+			return;
+		}
+		con.add(st);
+		ctx.addStatements(1);
+		
+		if (count % chunkSize == 0) {
+			try {
+				ctx.commitChunk(name, count);
+			} catch (IOException ex) {
+				throw new RDFHandlerException("Could not save checkpoint", ex);
+			}
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param ctx load context, with checkpoint
+	 * @param name name of the zip entry being loaded
+	 */
+	public ChunkHandler(LoadContext ctx, String name) {
+		this.ctx = ctx;
+		this.con = ctx.getConnection();
+		this.chunkSize = ctx.getChunkSize();
+		this.name = name;
+		this.skip = ctx.getCheckpoint().getCount(name);
+	}
+}
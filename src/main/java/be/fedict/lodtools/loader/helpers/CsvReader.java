@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+/**
+ * Read CSV files line by line, splitting lines into fields.
+ * 
+ * If the first line is a header with SPARQL variable names (e.g. ?id,?name),
+ * every following line is split on commas, except inside IRIs and quoted 
+ * literals. Otherwise the entire line is one field.
+ * 
+ * Lines are read into a reusable character buffer, fields are returned as 
+ * (read-only) CharBuffer slices of that buffer. 
+ * They are only valid until the next line is read.
+ * 
+ * @author Bart.Hanssens
+ */
+public class CsvReader implements AutoCloseable {
+	private final static Pattern VAR_NAME = Pattern.compile("[?$][A-Za-z0-9_]+");
+	private final static int BUF_SIZE = 8192;
+	
+	private final Reader r;
+	private final char[] in = new char[BUF_SIZE];
+	private int inPos = 0;
+	private int inLim = 0;
+	
+	private char[] line = new char[256];
+	private int len = 0;
+	private CharBuffer view = CharBuffer.wrap(line);
+	private boolean pushback = false;
+	private boolean columns = false;
+	
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int fields = 0;
+	
+	/**
+	 * Append characters to the line buffer
+	 * 
+	 * @param from start position in input buffer
+	 * @param to end position (exclusive)
+	 */
+	private void append(int from, int to) {
+		int n = to - from;
+		if (len + n > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, len + n));
+			view = CharBuffer.wrap(line);
+		}
+		System.arraycopy(in, from, line, len, n);
+		len += n;
+	}
+	
+	/**
+	 * Read a line into the line buffer, without the line terminator
+	 * 
+	 * @return false at the end of the input
+	 * @throws IOException 
+	 */
+	private boolean readLine() throws IOException {
+		len = 0;
+		boolean eof = true;
+		while (true) {
+			if (inPos == inLim) {
+				inLim = r.read(in, 0, in.length);
+				inPos = 0;
+				if (inLim <= 0) {
+					inLim = 0;
+					break;
+				}
+			}
+			eof = false;
+			int i = inPos;
+			while (i < inLim && in[i] != '\n') {
+				i++;
+			}
+			append(inPos, i);
+			if (i < inLim) {
+				inPos = i + 1;
+				break;
+			}
+			inPos = inLim;
+		}
+		if (len > 0 && line[len - 1] == '\r') {
+			len--;
+		}
+		return !eof;
+	}
+	
+	/**
+	 * Add a field, trimming leading and trailing whitespace
+	 * 
+	 * @param start start position
+	 * @param end end position (exclusive)
+	 */
+	private void addField(int start, int end) {
+		while (start < end && (line[start] == ' ' || line[start] == '\t')) {
+			start++;
+		}
+		while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+			end--;
+		}
+		if (fields == starts.length) {
+			starts = Arrays.copyOf(starts, fields * 2);
+			ends = Arrays.copyOf(ends, fields * 2);
+		}
+		starts[fields] = start;
+		ends[fields] = end;
+		fields++;
+	}
+	
+	/**
+	 * Split the line into fields.
+	 * Commas inside IRIs or (escaped) quoted literals do not split fields.
+	 */
+	private void split() {
+		fields = 0;
+		int start = 0;
+		boolean quoted = false;
+		boolean iri = false;
+		
+		for (int i = 0; i < len; i++) {
+			char c = line[i];
+			if (quoted) {
+				if (c == '\\') {
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				}
+			} else if (iri) {
+				iri = (c != '>');
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == '<') {
+				iri = true;
+			} else if (c == ',') {
+				addField(start, i);
+				start = i + 1;
+			}
+		}
+		addField(start, len);
+	}
+	
+	/**
+	 * Read the first line and check if it is a header with variable names.
+	 * If it is not, the line will be returned by the next call to next().
+	 * 
+	 * @return variable names (without ? or $) or null when there is no header
+	 * @throws IOException 
+	 */
+	public String[] readHeader() throws IOException {
+		if (!readLine()) {
+			return null;
+		}
+		split();
+		String[] vars = new String[fields];
+		for (int i = 0; i < fields; i++) {
+			CharBuffer f = field(i);
+			if (!VAR_NAME.matcher(f).matches()) {
+				pushback = true;
+				return null;
+			}
+			vars[i] = f.subSequence(1, f.length()).toString();
+		}
+		columns = true;
+		return vars;
+	}
+	
+	/**
+	 * Read the next line
+	 * 
+	 * @return false at the end of the input
+	 * @throws IOException 
+	 */
+	public boolean next() throws IOException {
+		if (pushback) {
+			pushback = false;
+		} else if (!readLine()) {
+			return false;
+		}
+		if (columns) {
+			split();
+		} else {
+			fields = 0;
+			addField(0, len);
+		}
+		return true;
+	}
+	
+	/**
+	 * Check if the current line is empty
+	 * 
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return fields == 0 || (fields == 1 && starts[0] == ends[0]);
+	}
+	
+	/**
+	 * Get the number of fields of the current line
+	 * 
+	 * @return number of fields
+	 */
+	public int size() {
+		return fields;
+	}
+	
+	/**
+	 * Get a field of the current line, without copying characters
+	 * 
+	 * @param i index
+	 * @return read-only slice of the line buffer
+	 */
+	public CharBuffer field(int i) {
+		if (i >= fields) {
+			throw new IndexOutOfBoundsException("No field " + i);
+		}
+		return CharBuffer.wrap(line, starts[i], ends[i] - starts[i])
+						.slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Get a field of the current line as an RDF value
+	 * 
+	 * @param i index
+	 * @param vf value factory
+	 * @return value, an empty literal if the field is empty or missing
+	 */
+	public Value getValue(int i, ValueFactory vf) {
+		if (i >= fields || starts[i] == ends[i]) {
+			return vf.createLiteral("");
+		}
+		return toValue(view, starts[i], ends[i], vf);
+	}
+	
+	/**
+	 * Find the closing quote of a literal
+	 * 
+	 * @param cs characters
+	 * @param start position after the opening quote
+	 * @param end end position (exclusive)
+	 * @return position of the closing quote or -1
+	 */
+	private static int closingQuote(CharSequence cs, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = cs.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '"') {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Convert a term to an IRI or a literal.
+	 * 
+	 * IRIs are enclosed in angle brackets, literals can be written as N-Triples
+	 * (with a language tag or datatype) or as plain text.
+	 * 
+	 * @param cs characters
+	 * @param start start position
+	 * @param end end position (exclusive)
+	 * @param vf value factory
+	 * @return IRI or literal
+	 */
+	public static Value toValue(CharSequence cs, int start, int end, ValueFactory vf) {
+		int n = end - start;
+		if (n > 0 && cs.charAt(start) == '<') {
+			int last = (cs.charAt(end - 1) == '>') ? end - 1 : end;
+			return vf.createIRI(cs.subSequence(start + 1, last).toString());
+		}
+		if (n > 1 && cs.charAt(start) == '"') {
+			int close = closingQuote(cs, start + 1, end);
+			if (close > 0) {
+				String label = cs.subSequence(start + 1, close).toString();
+				if (label.indexOf('\\') >= 0) {
+					label = NTriplesUtil.unescapeString(label);
+				}
+				int rest = close + 1;
+				if (rest == end) {
+					return vf.createLiteral(label);
+				}
+				if (cs.charAt(rest) == '@' && rest + 1 < end) {
+					return vf.createLiteral(label, 
+								cs.subSequence(rest + 1, end).toString());
+				}
+				if (rest + 3 < end && cs.charAt(rest) == '^' && cs.charAt(rest + 1) == '^'
+						&& cs.charAt(rest + 2) == '<' && cs.charAt(end - 1) == '>') {
+					return vf.createLiteral(label, 
+								vf.createIRI(cs.subSequence(rest + 3, end - 1).toString()));
+				}
+			}
+		}
+		// not a well-formed N-Triples term, use it as plain text
+		return vf.createLiteral(cs.subSequence(start, end).toString());
+	}
+
+	@Override
+	public void close() throws IOException {
+		r.close();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param r reader
+	 */
+	public CsvReader(Reader r) {
+		this.r = r;
+	}
+}
@@ -25,21 +25,35 @@
  */
 package be.fedict.lodtools.loader.helpers;
 
+import be.fedict.lodtools.loader.StorageConfig;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import com.google.common.io.CountingInputStream;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardWatchEventKinds;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.rdf4j.common.io.IOUtil;
 
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.Update;
@@ -47,208 +61,723 @@ import org.eclipse.rdf4j.query.Update;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
-import org.eclipse.rdf4j.repository.manager.RepositoryManager;
+import org.eclipse.rdf4j.repository.util.RDFInserter;
 import org.eclipse.rdf4j.rio.RDFFormat;
-import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Process files uploaded to a directory
+ * Process files uploaded to a directory.
  * 
  * @author Bart.Hanssens
  */
-public class DirProcessor implements Runnable {
+public class DirProcessor {
 	private final static Logger LOG = LoggerFactory.getLogger(DirProcessor.class);
 
-	private final ValueFactory F = SimpleValueFactory.getInstance();
+	private final static String[] VAR_ID = { "id" };
+	private final static int QUEUE_BATCHES = 8;
+	private final static Resource DEFAULT_GRAPH = null;
 	
 	private final String dir;
-	private final RepositoryManager mgr;
-	private final WatchService serv;
-	private final Map<WatchKey,Path> keys = new HashMap();
+	private final int batchSize;
+	private final long chunkSize;
+	private final int sortLines;
+	private final long sortChars;
+	private final boolean dedup;
+	private final String sortDir;
+	private final long maxEntrySize;
+	private final ValueFactory vf;
+	private final ParallelParser parallel;
+	private final ZipValidator validator;
+	private final QueryCache queries = new QueryCache();
+	private final LoadBackend backend;
+	private final MetricRegistry metrics;
+	private final Map<String,RepoMetrics> repoMetrics = new ConcurrentHashMap<>();
+	
+	/**
+	 * Check that the number of fields on a line does not exceed the number of
+	 * variables in the header
+	 * 
+	 * @param r CSV reader
+	 * @param vars variable names
+	 * @param name name of the CSV file
+	 * @param count line number
+	 * @throws IOException 
+	 */
+	private static void checkFields(CsvReader r, String[] vars, String name, 
+										long count) throws IOException {
+		if (r.size() > vars.length) {
+			throw new IOException("Too many fields in " + name + " line " + count);
+		}
+	}
+	
+	/**
+	 * Execute the update once per line, using a prepared update
+	 * 
+	 * @param ctx load context
+	 * @param qry SPARQL update
+	 * @param r CSV reader
+	 * @param vars variable names
+	 * @param name name of the CSV file
+	 * @throws IOException
+	 */
+	private void updateSingle(LoadContext ctx, String qry, CsvReader r,
+							String[] vars, String name) throws IOException {
+		Update upd = ctx.getConnection().prepareUpdate(qry);
+		LOG.info("Query {}", upd);
+		
+		Checkpoint cp = ctx.getCheckpoint();
+		RepoMetrics m = ctx.getMetrics();
+		long skip = (cp != null) ? cp.getCount(name) : 0;
+		long count = 0;
+		
+		while (r.next()) {
+			// already committed in a previous run
+			if (++count <= skip) {
+				continue;
+			}
+			if (!r.isEmpty()) {
+				checkFields(r, vars, name, count);
+				upd.clearBindings();
+				for (int i = 0; i < vars.length; i++) {
+					upd.setBinding(vars[i], r.getValue(i, vf));
+				}
+				upd.execute();
+				m.getUpdates().mark();
+				ctx.addLines(1);
+			}
+			if (cp != null && count % ctx.getChunkSize() == 0) {
+				ctx.commitChunk(name, count);
+			}
+		}
+	}
+	
+	/**
+	 * Execute the update for multiple lines at once, by repeating the update
+	 * (with the variables filled in) in one multi-operation SPARQL update.
+	 * Empty fields are filled in as empty literals.
+	 * 
+	 * @param ctx load context
+	 * @param qry SPARQL update
+	 * @param r CSV reader
+	 * @param vars variable names
+	 * @param name name of the CSV file
+	 * @throws IOException
+	 */
+	private void updateBatched(LoadContext ctx, String qry, CsvReader r,
+							String[] vars, String name) throws IOException {
+		QueryTemplate template = new QueryTemplate(qry, vars);
+		LOG.info("Query {}, batch size {}", qry, batchSize);
+
+		RepositoryConnection con = ctx.getConnection();
+		Checkpoint cp = ctx.getCheckpoint();
+		RepoMetrics m = ctx.getMetrics();
+		
+		StringBuilder buf = new StringBuilder();
+		String[] vals = new String[vars.length];
+		int inBatch = 0;
+		
+		long skip = (cp != null) ? cp.getCount(name) : 0;
+		long count = 0;
+		long committed = skip;
+		
+		while (r.next()) {
+			// already committed in a previous run
+			if (++count <= skip || r.isEmpty()) {
+				continue;
+			}
+			checkFields(r, vars, name, count);
+			for (int i = 0; i < vars.length; i++) {
+				try {
+					vals[i] = QueryTemplate.toTerm(r.getValue(i, vf));
+				} catch (IllegalArgumentException ex) {
+					throw new IOException(ex.getMessage() + " in " + name + " line " + count);
+				}
+			}
+			if (inBatch > 0) {
+				// new line first, the update may end with a comment
+				buf.append("\n;\n");
+			}
+			template.fill(buf, vals);
+			if (++inBatch == batchSize) {
+				con.prepareUpdate(buf.toString()).execute();
+				m.getUpdates().mark();
+				ctx.addLines(inBatch);
+				buf.setLength(0);
+				inBatch = 0;
+				// only commit complete batches
+				if (cp != null && count - committed >= ctx.getChunkSize()) {
+					ctx.commitChunk(name, count);
+					committed = count;
+				}
+			}
+		}
+		if (inBatch > 0) {
+			con.prepareUpdate(buf.toString()).execute();
+			m.getUpdates().mark();
+			ctx.addLines(inBatch);
+		}
+	}
+	
+	/**
+	 * Get the query for a CSV file, either from a similarly named query file
+	 * in the zip or from the default query directory of the repository
+	 * 
+	 * @param zip zip file or null
+	 * @param csv name of the CSV file
+	 * @param qryDir default query dir
+	 * @return query or null if not found
+	 * @throws IOException 
+	 */
+	private String getQuery(ZipFile zip, String csv, File qryDir) 
+															throws IOException {
+		String name = FileUtil.getQueryName(csv);
+		ZipEntry qryEntry = (zip != null) ? zip.getEntry(name) : null;
+		
+		if (qryEntry != null) {
+			try (InputStream is = zip.getInputStream(qryEntry)) {
+				return IOUtil.readString(new InputStreamReader(is, StandardCharsets.UTF_8));
+			}
+		}
+		
+		LOG.info("No query file {}, trying default one", name);
+		File qryfile = FileUtil.getQueryFile(qryDir, new File(csv));
+		if (!qryfile.exists()) {
+			LOG.warn("No default query file {}, ignore CSV", qryfile);
+			return null;
+		}
+		return queries.get(qryfile);
+	}
+	
+	/**
+	 * Execute the query for every line of a (possibly compressed) CSV file
+	 * 
+	 * @param ctx load context
+	 * @param name name of the CSV file
+	 * @param qry SPARQL update
+	 * @param in input stream
+	 * @throws IOException 
+	 */
+	private void updateWithFile(LoadContext ctx, String name, String qry,
+										InputStream in) throws IOException {
+		// Read line by line, memory use does not depend on the size of the file
+		InputStream is = FileUtil.decompress(name, in);
+		try (CsvReader r = new CsvReader(
+								new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			// header with variable names, or one ID per line
+			String[] vars = r.readHeader();
+			if (vars == null) {
+				vars = VAR_ID;
+			}
+			if (batchSize > 1) {
+				updateBatched(ctx, qry, r, vars, name);
+			} else {
+				updateSingle(ctx, qry, r, vars, name);
+			}
+		}
+	}
 	
 	/**
 	 * Use CSV file as input for similarly named query file 
 	 * (either in the upload zip or as default query for this repository)
 	 * 
-	 * @param con repository connection
-	 * @param file CSV file
+	 * @param ctx load context
+	 * @param entry CSV entry
 	 * @param qryDir default query dir
 	 * @throws IOException 
 	 */
-	private void queryWithFile(RepositoryConnection con, File file, File qryDir) 
+	private void queryWithFile(LoadContext ctx, ZipEntry entry, File qryDir) 
 															throws IOException {
-		LOG.info("Processing CSV file {}", file);
+		LOG.info("Processing CSV file {}", entry.getName());
 
 		// Check if there is a query file in the zip, or use the default one
-		File qryfile = FileUtil.getQueryFile(file.getParentFile(), file);
+		ZipFile zip = ctx.getZip();
+		String s = getQuery(zip, entry.getName(), qryDir);
+		if (s == null) {
+			return;
+		}
 		
-		if (!qryfile.exists()) {
-			LOG.info("No query file {}, trying default one", qryfile);
-			qryfile = FileUtil.getQueryFile(qryDir, file);
-			if (!qryfile.exists()) {
-				LOG.warn("No default query file {}, ignore CSV", qryfile);
-				return;
+		if (entry.getSize() == 0) {
+			LOG.warn("Zero length CSV file {}, nothing to do", entry.getName());
+			return;
+		}
+		updateWithFile(ctx, entry.getName(), s, zip.getInputStream(entry));
+	}
+	
+	/**
+	 * Load (possibly compressed) RDF file into RDF Store.
+	 * 
+	 * When a checkpoint is used, the transaction is committed every 
+	 * chunk size statements.
+	 * When more than one parser thread is configured, line-based formats are
+	 * parsed in parallel.
+	 * When a sort directory is given, duplicate N-Triples are removed first.
+	 * 
+	 * @param ctx load context
+	 * @param entry entry to load
+	 * @param format RDF format
+	 * @param sortDir directory for temporary sort files or null
+	 * @throws IOException
+	 */
+	private void loadFile(LoadContext ctx, ZipEntry entry, RDFFormat format, 
+										Path sortDir) throws IOException {
+		// count the uncompressed bytes
+		CountingInputStream cis = new CountingInputStream(
+			FileUtil.decompress(entry.getName(), ctx.getZip().getInputStream(entry)));
+		
+		if (sortDir != null && RDFFormat.NTRIPLES.equals(format)) {
+			Path sorted = Files.createTempFile(sortDir, "dedup", FileUtil.EXT_SNAPSHOT);
+			try {
+				try (InputStream is = cis) {
+					long n = new GraphDiff(sortDir, sortLines, sortChars).dedup(is, sorted);
+					LOG.info("Found {} distinct statements in {}", n, entry.getName());
+				}
+				loadFile(ctx, entry, format, 
+							new GZIPInputStream(Files.newInputStream(sorted)));
+			} finally {
+				Files.deleteIfExists(sorted);
 			}
+		} else {
+			loadFile(ctx, entry, format, cis);
 		}
+		ctx.addBytes(cis.getCount());
+	}
+	
+	/**
+	 * Load RDF data from an uncompressed stream, closing the stream afterwards
+	 * 
+	 * @param ctx load context
+	 * @param entry entry to load
+	 * @param format RDF format
+	 * @param is input stream
+	 * @throws IOException 
+	 */
+	private void loadFile(LoadContext ctx, ZipEntry entry, RDFFormat format, 
+										InputStream is) throws IOException {
+		LOG.info("Loading {} as {}", entry.getName(), format.getName());
 		
-		String s = new String(Files.readAllBytes(qryfile.toPath()), StandardCharsets.UTF_8);
-		Update upd = con.prepareUpdate(s);
-		LOG.info("Query {}", upd);
+		RepositoryConnection con = ctx.getConnection();
+		RDFHandler handler = (ctx.getCheckpoint() == null) 
+			? new MeteredHandler(new RDFInserter(con), ctx)
+			: new ChunkHandler(ctx, entry.getName());
+		
+		// parse on the client, so the statements can be counted
+		try (InputStream in = is) {
+			if (parallel != null && ParallelParser.supports(format)) {
+				parallel.parse(in, format, handler);
+			} else {
+				RDFParser parser = Rio.createParser(format, vf);
+				parser.setRDFHandler(handler);
+				parser.parse(in, "");
+			}
+		}
+	}
+	
+	/**
+	 * Compare (possibly compressed) N-Triples file with the previous snapshot
+	 * of the file with the same name, and only add or remove the statements 
+	 * that changed.
+	 * 
+	 * The new snapshot replaces the previous one when it is committed.
+	 * 
+	 * @param ctx load context
+	 * @param entry N-Triples entry
+	 * @param repoDir directory of the repository
+	 * @param sortDir directory for temporary sort files
+	 * @throws IOException 
+	 */
+	private void diffFile(LoadContext ctx, ZipEntry entry, Path repoDir, 
+										Path sortDir) throws IOException {
+		String name = FileUtil.stripCompression(entry.getName());
+		Path procDir = repoDir.resolve(FileUtil.DIR_PROCESS);
+		Path prev = repoDir.resolve(FileUtil.DIR_DONE).resolve(name + FileUtil.EXT_SNAPSHOT);
+		Path next = procDir.resolve(name + FileUtil.EXT_SNAPSHOT);
 		
-		long size = Files.size(file.toPath());
-		if (size == 0) {
-			LOG.warn("Zero {}");
+		long bytes;
+		try (CountingInputStream is = new CountingInputStream(FileUtil.decompress(
+							entry.getName(), ctx.getZip().getInputStream(entry)))) {
+			long n = new GraphDiff(sortDir, sortLines, sortChars).snapshot(is, next);
+			bytes = is.getCount();
+			LOG.info("Comparing {} statements of {} with previous snapshot", n, name);
 		}
-		for(String id: Files.readAllLines(file.toPath())) {
-			upd.clearBindings();
-			upd.setBinding("id", id.startsWith("<") ? F.createIRI(id) 
-														: F.createLiteral(id));
-			upd.execute();
+		
+		RepositoryConnection con = ctx.getConnection();
+		Checkpoint cp = ctx.getCheckpoint();
+		long skip = (cp != null) ? cp.getCount(entry.getName()) : 0;
+		
+		GraphDiff.DiffHandler handler = new GraphDiff.DiffHandler() {
+			private long count = 0;
+			private long added = 0;
+			private long removed = 0;
+			
+			/**
+			 * Check if the change was already committed in a previous run
+			 * 
+			 * @return true if change must be skipped
+			 */
+			private boolean skip() {
+				return ++count <= skip;
+			}
+			
+			/**
+			 * Commit every chunk size changes
+			 * 
+			 * @throws IOException 
+			 */
+			private void done() throws IOException {
+				ctx.addStatements(1);
+				if (cp != null && count % ctx.getChunkSize() == 0) {
+					ctx.commitChunk(entry.getName(), count);
+				}
+			}
+			
+			@Override
+			public void added(Statement st) throws IOException {
+				if (!skip()) {
+					con.add(st, DEFAULT_GRAPH);
+					added++;
+					done();
+				}
+			}
+
+			@Override
+			public void removed(Statement st) throws IOException {
+				if (!skip()) {
+					// without a context, the statement would be removed from all graphs
+					con.remove(st, DEFAULT_GRAPH);
+					removed++;
+					done();
+				}
+			}
+			
+			@Override
+			public String toString() {
+				return added + " added, " + removed + " removed";
+			}
+		};
+		GraphDiff.diff(prev, next, vf, handler);
+		LOG.info("Changes in {}: {}", name, handler);
+		
+		ctx.addSnapshot(next, prev);
+		ctx.addBytes(bytes);
+	}
+	
+	/**
+	 * Open a connection to a repository
+	 * 
+	 * @param repoName repository name
+	 * @return connection
+	 * @throws RepositoryException when the repository is unknown
+	 */
+	private RepositoryConnection connect(String repoName) {
+		Repository repo = backend.getRepository(repoName);
+		if (repo == null) {
+			throw new RepositoryException("Unknown repository " + repoName);
 		}
+		return repo.getConnection();
 	}
 	
 	/**
-	 * Load (NTriples) file into RDF Store
+	 * Get the metrics of a repository
 	 * 
-	 * @param file file to load
-	 * @return true upon success
+	 * @param repoName repository name
+	 * @return metrics
+	 */
+	private RepoMetrics getMetrics(String repoName) {
+		return repoMetrics.computeIfAbsent(repoName, r -> new RepoMetrics(metrics, r));
+	}
+	
+	/**
+	 * Validate the entries that still have to be loaded, before opening a
+	 * connection to the triple store, and set the expected number of 
+	 * statements and lines of the job.
+	 * 
+	 * @param zip zip file
+	 * @param entries entries
+	 * @param cp checkpoint or null
+	 * @param qryDir default query directory
+	 * @param job status of the job
+	 * @throws IOException 
 	 */
-	private void loadFile(RepositoryConnection con, File file) throws IOException {
-		LOG.info("Loading {}", file);
+	private void validate(ZipFile zip, List<ZipEntry> entries, Checkpoint cp, 
+							File qryDir, JobStatus job) throws IOException {
+		List<ZipEntry> todo = new ArrayList<>(entries.size());
+		for (ZipEntry e: entries) {
+			if (cp == null || !cp.isDone(e.getName())) {
+				todo.add(e);
+			}
+		}
+		LOG.info("Validating {} files", todo.size());
 		
-		con.add(file, "", RDFFormat.NTRIPLES);
+		long statements = 0;
+		long lines = 0;
+		for (Map.Entry<String,Long> count: validator.validate(zip, todo, qryDir).entrySet()) {
+			if (FileUtil.stripCompression(count.getKey()).endsWith(FileUtil.EXT_CSV)) {
+				lines += count.getValue();
+			} else {
+				statements += count.getValue();
+			}
+		}
+		LOG.info("Expecting {} statements and {} lines", statements, lines);
+		job.setExpected(statements, lines);
 	}
 	
 	/**
-	 * Process contents of a zip file
+	 * Process contents of a zip file.
+	 * 
+	 * The entries are read directly from the zip, in order of their names,
+	 * without unzipping them to disk first.
+	 * RDF files are recognized by their extension, and may be compressed
+	 * with gzip or bzip2.
+	 * 
+	 * By default, all entries are processed in one transaction.
+	 * If a chunk size is set (in the configuration or the manifest of the zip),
+	 * the transaction is committed after every chunk and every entry, and a 
+	 * checkpoint is kept so a failed load can be resumed when the same zip is
+	 * uploaded or retried again.
 	 * 
 	 * @param repoName
 	 * @param tmpfile 
+	 * @param job status of the job
 	 */
-	private boolean processZip(String repoName, File tmpfile) {
-		boolean res = FileUtil.unzip(tmpfile);
+	private boolean processZip(String repoName, File tmpfile, JobStatus job) {
+		boolean res;
 		
-		if (res == false) {
-			LOG.error("Unzip failed");
-			return false;
-		}
+		Path repoDir = Paths.get(this.dir, repoName);
+		File qryDir = repoDir.resolve(FileUtil.DIR_QUERY).toFile();
+		RepoMetrics m = getMetrics(repoName);
 		
-		File qryDir = Paths.get(this.dir, repoName, FileUtil.DIR_QUERY).toFile();
-		
-		File unzipDir = FileUtil.getUnzipDir(tmpfile);
-		File[] files = unzipDir.listFiles();
-		Arrays.sort(files);
-			
-		LOG.info("Loading {} files into {}", files.length, repoName);
+		try(Timer.Context t = m.getLoad().time();
+			ZipFile zip = new ZipFile(tmpfile)) {
+			List<ZipEntry> entries = FileUtil.getEntries(zip);
+			LOG.info("Loading {} files into {}", entries.size(), repoName);
+			ZipValidator.check(entries, maxEntrySize);
 			
-		try(RepositoryConnection con = mgr.getRepository(repoName).getConnection()) {
-			if (con == null) {
-				LOG.error("No connection to {}", repoName);
-				return false;
+			Properties manifest = FileUtil.getManifest(zip);
+			long chunkSize = Long.valueOf(manifest.getProperty(FileUtil.CHUNK_SIZE, 
+												String.valueOf(this.chunkSize)));
+			boolean diff = FileUtil.MODE_DIFF.equals(manifest.getProperty(FileUtil.MODE));
+			if (diff) {
+				LOG.info("Comparing N-Triples files with previous snapshots");
+			}
+			boolean dedup = Boolean.valueOf(manifest.getProperty(FileUtil.DEDUP,
+												String.valueOf(this.dedup)));
+			Path sortDir = (this.sortDir != null) 
+								? Paths.get(this.sortDir) : repoDir.resolve(FileUtil.DIR_PROCESS);
+			if (dedup) {
+				LOG.info("Removing duplicate N-Triples using {}", sortDir);
+			}
+			Checkpoint cp = null;
+			if (chunkSize > 0) {
+				LOG.info("Committing every {} statements or lines", chunkSize);
+				cp = new Checkpoint(FileUtil.getCheckpointFile(tmpfile), 
+									FileUtil.fingerprint(entries));
+			}
+			if (validator != null) {
+				validate(zip, entries, cp, qryDir, job);
 			}
 			
-			con.begin();
-			for (File f: files) {
-				String name = f.getName();
-				if (name.endsWith(".nt")) {
-					loadFile(con, f);
-				} 
-				if (name.endsWith(".csv")) {
-					queryWithFile(con, f, qryDir);
+			try (RepositoryConnection con = connect(repoName)) {
+				LoadContext ctx = new LoadContext(con, zip, chunkSize, cp, m, job);
+			
+				con.begin();
+				for (ZipEntry e: entries) {
+					if (cp != null && cp.isDone(e.getName())) {
+						LOG.info("Skipping {}, already loaded", e.getName());
+						continue;
+					}
+					String name = FileUtil.stripCompression(e.getName());
+					if (name.endsWith(FileUtil.EXT_CSV)) {
+						queryWithFile(ctx, e, qryDir);
+					} else {
+						Optional<RDFFormat> format = FileUtil.getRDFFormat(name);
+						if (diff && RDFFormat.NTRIPLES.equals(format.orElse(null))) {
+							diffFile(ctx, e, repoDir, sortDir);
+						} else if (format.isPresent()) {
+							loadFile(ctx, e, format.get(), dedup ? sortDir : null);
+						} else if (!name.endsWith(FileUtil.EXT_QRY) 
+									&& !name.equals(FileUtil.MANIFEST)) {
+							LOG.warn("Ignoring {}, unknown extension", e.getName());
+						}
+					}
+					ctx.commitEntry(e.getName());
+					job.progress();
 				}
+				ctx.commit();
+			}
+			if (cp != null) {
+				cp.delete();
 			}
-			con.commit();
 			res = true;
 			LOG.info("Done loading");
-		} catch (RepositoryException|RDFParseException|IOException ex) {
+		} catch (IOException|RuntimeException ex) {
+			// includes all RDF4J exceptions, e.g. malformed or failed queries
 			res = false;
+			m.getFailures().mark();
 			LOG.error("Failure loading {} : {}", tmpfile.getName(), ex.getMessage());
 		}
 		return res;
 	}
 	
 	/**
-	 * Process a file
+	 * Process an uploaded file.
 	 * 
-	 * @param repoName
-	 * @param file 
+	 * The file is moved to the processing directory (unless it is already
+	 * there, e.g. when recovering after a restart) and then to the done or
+	 * failed directory.
+	 * 
+	 * @param repoName repository name
+	 * @param name file name
+	 * @param job status of the job
+	 * @return true upon success
 	 */
-	private void processFile(String repoName, File file) {
+	public boolean processFile(String repoName, String name, JobStatus job) {
+		File file = Paths.get(dir, repoName, name).toFile();
 		File tmpfile = FileUtil.getFile(dir, repoName, FileUtil.DIR_PROCESS, file);
-		FileUtil.move(file, tmpfile);
-			
-		if (tmpfile.getName().endsWith(FileUtil.EXT_ZIP)) {
-			if (processZip(repoName, tmpfile) == true) {
-				File done = FileUtil.getFile(dir, repoName, FileUtil.DIR_DONE, file);
-				FileUtil.move(tmpfile, done);
-			} else {
-				File failed = FileUtil.getFile(dir, repoName, FileUtil.DIR_FAILED, file);
-				FileUtil.move(tmpfile, failed);
-			}
+		if (file.exists()) {
+			FileUtil.move(file, tmpfile);
 		}
-	}
-
-	@Override
-	public void run() {
+		if (!tmpfile.exists()) {
+			LOG.error("File {} not found", tmpfile);
+			return false;
+		}
+		
+		boolean res = false;
 		try {
-			LOG.info("Running dir processor");
-			WatchKey key = serv.take();
-			while (key != null) {
-				Path p = keys.get(key);
-				if (p == null) {
-					continue;
-				}
-				for(WatchEvent ev: key.pollEvents()) {
-					WatchEvent.Kind kind = ev.kind();
-					if (kind == StandardWatchEventKinds.OVERFLOW) {
-						LOG.error("Overflow");
-						continue;
-					}
-					Path file = p.resolve(((WatchEvent<Path>)ev).context());
-					String repoName = p.getFileName().toString();
-					
-					try {
-						processFile(repoName, file.toFile());
-					} catch (Exception e) {
-						LOG.error("Caught exception in dirprocessor");
-					}
-				}
-				key.reset();
-				key = serv.take();
-			}
-		} catch (InterruptedException ex) {
-			LOG.error("Interrupted");
+			res = processZip(repoName, tmpfile, job);
+		} finally {
+			// never leave the file in the processing directory, it would be
+			// queued again by the next scan
+			String target = res ? FileUtil.DIR_DONE : FileUtil.DIR_FAILED;
+			FileUtil.move(tmpfile, FileUtil.getFile(dir, repoName, target, file));
 		}
-		LOG.info("done watching");
+		return res;
 	}
 	
 	/**
-	 * Constructor
+	 * Load a (possibly compressed) RDF file from a stream, using a separate
+	 * thread for sending the statements to the repository.
 	 * 
-	 * @param mgr
-	 * @param dir
+	 * @param ctx load context
+	 * @param name file name
+	 * @param in input stream
+	 * @param format RDF format
 	 * @throws IOException 
 	 */
-	public DirProcessor(RepositoryManager mgr, String dir) throws IOException {
-		this.mgr = mgr;
-		this.serv = FileSystems.getDefault().newWatchService();
-		this.dir = dir;
-		LOG.info("Getting repo's");
+	private void loadStream(LoadContext ctx, String name, InputStream in, 
+										RDFFormat format) throws IOException {
+		LOG.info("Loading stream {} as {}", name, format.getName());
 		
-		for (Repository repo: mgr.getAllRepositories()) {
-			String name = FileUtil.repoName(repo);
-			Path p = Paths.get(dir, name);
+		RepositoryConnection con = ctx.getConnection();
+		RDFHandler inserter = new MeteredHandler(new RDFInserter(con), ctx);
+
+		try (PipedHandler handler = new PipedHandler(inserter, QUEUE_BATCHES);
+			InputStream is = FileUtil.decompress(name, in)) {
+			if (parallel != null && ParallelParser.supports(format)) {
+				parallel.parse(is, format, handler);
+			} else {
+				RDFParser parser = Rio.createParser(format, vf);
+				parser.setRDFHandler(handler);
+				parser.parse(is, "");
+			}
+		}
+	}
+	
+	/**
+	 * Check if a file can be loaded or used as input for a query
+	 * 
+	 * @param name file name
+	 * @return true if RDF or CSV file
+	 */
+	public static boolean supports(String name) {
+		String s = FileUtil.stripCompression(name);
+		return s.endsWith(FileUtil.EXT_CSV) || FileUtil.getRDFFormat(s).isPresent();
+	}
 	
-			if (p.toFile().exists() && p.toFile().isDirectory()) {
-				WatchKey wk = p.register(serv, StandardWatchEventKinds.ENTRY_CREATE);
-				keys.put(wk, p);
-				LOG.info("watching {}", p);
+	/**
+	 * Process an RDF or CSV file directly from a stream.
+	 * 
+	 * The file is processed in one transaction, there is no checkpoint.
+	 * 
+	 * @param repoName repository name
+	 * @param name file name
+	 * @param is input stream
+	 * @param job status of the job
+	 * @return true upon success
+	 */
+	public boolean processStream(String repoName, String name, InputStream is,
+															JobStatus job) {
+		boolean res;
+		
+		File qryDir = Paths.get(this.dir, repoName, FileUtil.DIR_QUERY).toFile();
+		RepoMetrics m = getMetrics(repoName);
+		
+		try(Timer.Context t = m.getLoad().time();
+			RepositoryConnection con = connect(repoName)) {
+			LoadContext ctx = new LoadContext(con, null, 0, null, m, job);
+			
+			con.begin();
+			String s = FileUtil.stripCompression(name);
+			if (s.endsWith(FileUtil.EXT_CSV)) {
+				String qry = getQuery(null, name, qryDir);
+				if (qry == null) {
+					return false;
+				}
+				updateWithFile(ctx, name, qry, is);
 			} else {
-				LOG.warn("Skipping {}, not a readable directory", name);
+				loadStream(ctx, name, is, FileUtil.getRDFFormat(s).get());
 			}
+			ctx.commit();
+			res = true;
+			LOG.info("Done loading stream {}", name);
+		} catch (IOException|RuntimeException ex) {
+			// includes all RDF4J exceptions, e.g. malformed or failed queries
+			res = false;
+			m.getFailures().mark();
+			LOG.error("Failure loading stream {} : {}", name, ex.getMessage());
+		}
+		return res;
+	}
+	
+	/**
+	 * Stop watching the query directories
+	 */
+	public void close() {
+		try {
+			queries.close();
+		} catch (IOException ex) {
+			LOG.warn("Could not close query cache: {}", ex.getMessage());
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param backend backend to load data into
+	 * @param cfg storage configuration
+	 * @param metrics metrics registry
+	 */
+	public DirProcessor(LoadBackend backend, StorageConfig cfg, MetricRegistry metrics) {
+		this.backend = backend;
+		this.metrics = metrics;
+		this.dir = cfg.getProcessRoot();
+		this.batchSize = cfg.getBatchSize();
+		this.chunkSize = cfg.getChunkSize();
+		this.sortLines = cfg.getSortLines();
+		this.sortChars = cfg.getSortChars();
+		this.dedup = cfg.getDedup();
+		this.sortDir = cfg.getSortDir();
+		this.maxEntrySize = cfg.getMaxEntrySize();
+		this.vf = (cfg.getInternSize() > 0) 
+							? new InterningValueFactory(cfg.getInternSize(), metrics)
+							: SimpleValueFactory.getInstance();
+		this.parallel = (cfg.getParseThreads() > 1) 
+							? new ParallelParser(cfg.getParseThreads(), vf) : null;
+		this.validator = (cfg.getValidateThreads() > 0)
+							? new ZipValidator(cfg.getValidateThreads()) : null;
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sort (and optionally remove duplicate) lines using a bounded amount of memory.
+ * 
+ * Lines are kept in memory until the maximum number of lines or characters
+ * is reached, then the sorted lines are written to a temporary (compressed) 
+ * file. 
+ * The sorted files are merged into one sorted output file.
+ * 
+ * @author Bart.Hanssens
+ */
+public class ExternalSort implements AutoCloseable {
+	private final Path dir;
+	private final int maxLines;
+	private final long maxChars;
+	private final boolean unique;
+	
+	private long chars = 0;
+	
+	private final List<String> lines = new ArrayList<>();
+	private final List<Path> runs = new ArrayList<>();
+	
+	/**
+	 * Sorted file being merged
+	 */
+	private static class Run implements Comparable<Run> {
+		private final BufferedReader r;
+		private String line;
+		
+		/**
+		 * Read the next line
+		 * 
+		 * @return false at the end of the file
+		 * @throws IOException 
+		 */
+		private boolean next() throws IOException {
+			line = r.readLine();
+			return line != null;
+		}
+		
+		@Override
+		public int compareTo(Run o) {
+			return line.compareTo(o.line);
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param r reader
+		 */
+		public Run(BufferedReader r) {
+			this.r = r;
+		}
+	}
+	
+	/**
+	 * Open a compressed file for reading
+	 * 
+	 * @param p path
+	 * @return reader
+	 * @throws IOException 
+	 */
+	public static BufferedReader reader(Path p) throws IOException {
+		return new BufferedReader(new InputStreamReader(
+			new GZIPInputStream(Files.newInputStream(p)), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Open a compressed file for writing
+	 * 
+	 * @param p path
+	 * @return writer
+	 * @throws IOException 
+	 */
+	public static Writer writer(Path p) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(
+			new GZIPOutputStream(Files.newOutputStream(p)), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Write the lines in memory to a temporary sorted file
+	 * 
+	 * @throws IOException 
+	 */
+	private void spill() throws IOException {
+		Path run = Files.createTempFile(dir, "sort", ".gz");
+		runs.add(run);
+		try (Writer w = writer(run)) {
+			write(w);
+		}
+		lines.clear();
+		chars = 0;
+	}
+	
+	/**
+	 * Sort the lines in memory and write them
+	 * 
+	 * @param w writer
+	 * @return number of lines written
+	 * @throws IOException 
+	 */
+	private long write(Writer w) throws IOException {
+		Collections.sort(lines);
+		
+		long count = 0;
+		String prev = null;
+		for (String line: lines) {
+			if (unique && line.equals(prev)) {
+				continue;
+			}
+			w.write(line);
+			w.write('\n');
+			prev = line;
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Merge the temporary sorted files
+	 * 
+	 * @param w writer
+	 * @return number of lines written
+	 * @throws IOException 
+	 */
+	private long merge(Writer w) throws IOException {
+		PriorityQueue<Run> queue = new PriorityQueue<>(runs.size());
+		List<BufferedReader> readers = new ArrayList<>(runs.size());
+		
+		long count = 0;
+		try {
+			for (Path p: runs) {
+				BufferedReader r = reader(p);
+				readers.add(r);
+				Run run = new Run(r);
+				if (run.next()) {
+					queue.add(run);
+				}
+			}
+			String prev = null;
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				if (!unique || !run.line.equals(prev)) {
+					w.write(run.line);
+					w.write('\n');
+					prev = run.line;
+					count++;
+				}
+				if (run.next()) {
+					queue.add(run);
+				}
+			}
+		} finally {
+			for (BufferedReader r: readers) {
+				r.close();
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Add a line
+	 * 
+	 * @param line line, without line break
+	 * @throws IOException 
+	 */
+	public void add(String line) throws IOException {
+		lines.add(line);
+		chars += line.length();
+		if (lines.size() >= maxLines || chars >= maxChars) {
+			spill();
+		}
+	}
+	
+	/**
+	 * Write all the lines, sorted, to a compressed file
+	 * 
+	 * @param out output file
+	 * @return number of lines written
+	 * @throws IOException 
+	 */
+	public long sort(Path out) throws IOException {
+		try (Writer w = writer(out)) {
+			if (runs.isEmpty()) {
+				return write(w);
+			}
+			if (!lines.isEmpty()) {
+				spill();
+			}
+			return merge(w);
+		}
+	}
+	
+	/**
+	 * Remove the temporary files
+	 */
+	@Override
+	public void close() {
+		for (Path p: runs) {
+			try {
+				Files.deleteIfExists(p);
+			} catch (IOException ex) {
+				// ignore
+			}
+		}
+		runs.clear();
+		lines.clear();
+		chars = 0;
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param dir directory for temporary files
+	 * @param maxLines maximum number of lines kept in memory
+	 * @param maxChars maximum number of characters kept in memory
+	 * @param unique remove duplicate lines
+	 */
+	public ExternalSort(Path dir, int maxLines, long maxChars, boolean unique) {
+		this.dir = dir;
+		this.maxLines = maxLines;
+		this.maxChars = maxChars;
+		this.unique = unique;
+	}
+}
@@ -25,10 +25,17 @@
  */
 package be.fedict.lodtools.loader.helpers;
 
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -38,12 +45,24 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 import java.util.Comparator;
-import java.util.stream.Stream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.http.HTTPRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParserRegistry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,15 +76,41 @@ public class FileUtil {
 	public final static String DIR_FAILED = "failed";
 	public final static String DIR_PROCESS = "process";
 	public final static String DIR_QUERY = "query";
+	public final static String DIR_NATIVE = "native";
 	
 	public final static String EXT_ZIP = ".zip";
+	public final static String EXT_CSV = ".csv";
+	public final static String EXT_QRY = ".qr";
+	public final static String EXT_CHECKPOINT = ".checkpoint";
+	public final static String EXT_GZ = ".gz";
+	public final static String EXT_BZ2 = ".bz2";
+	public final static String EXT_SNAPSHOT = ".snapshot.gz";
+	public final static String EXT_HIGH = ".high.zip";
+	public final static String EXT_LOW = ".low.zip";
+	
+	public final static String MANIFEST = "load.properties";
+	public final static String CHUNK_SIZE = "chunkSize";
+	public final static String MODE = "mode";
+	public final static String MODE_DIFF = "diff";
+	public final static String DEDUP = "dedup";
 	
 	private final static Logger LOG = LoggerFactory.getLogger(FileUtil.class);
 	
 	private final static DateTimeFormatter DF = 
 						DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+	
+	private final static Map<String,RDFFormat> FORMATS = new HashMap<>();
+	static {
+		FORMATS.put(".nt", RDFFormat.NTRIPLES);
+		FORMATS.put(".nq", RDFFormat.NQUADS);
+		FORMATS.put(".ttl", RDFFormat.TURTLE);
+		FORMATS.put(".trig", RDFFormat.TRIG);
+		FORMATS.put(".rdf", RDFFormat.RDFXML);
+		FORMATS.put(".jsonld", RDFFormat.JSONLD);
+	}
 
 	private final String dir;
+	private final MetricRegistry metrics;
 	
 	/**
 	 * Get processing directory
@@ -89,8 +134,10 @@ public class FileUtil {
 		Path upload = Paths.get(dir, repo, "upload", name);
 				
 		LOG.info("Uploading {}", file);
-		try {
-			Files.copy(is, upload, StandardCopyOption.REPLACE_EXISTING);
+		try (Timer.Context t = metrics.timer(
+								MetricRegistry.name(FileUtil.class, repo, "upload")).time()) {
+			long bytes = Files.copy(is, upload, StandardCopyOption.REPLACE_EXISTING);
+			metrics.meter(MetricRegistry.name(FileUtil.class, repo, "bytes")).mark(bytes);
 			Files.move(upload, file, StandardCopyOption.ATOMIC_MOVE);
 		} catch (IOException ex) {
 			file = null;
@@ -115,6 +162,28 @@ public class FileUtil {
 	}
 	
 
+	/**
+	 * Move a failed upload back to the upload directory, so it will be 
+	 * processed again (resuming from the last checkpoint, if any)
+	 * 
+	 * @param repo RDF repository
+	 * @param name name of the uploaded file
+	 * @return true upon success
+	 */
+	public boolean retry(String repo, String name) {
+		Path failed = Paths.get(dir, repo, DIR_FAILED, name);
+		Path file = Paths.get(dir, repo, name);
+		
+		LOG.info("Retrying {}", failed);
+		try {
+			Files.move(failed, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			LOG.error("Error retrying {} : {}", failed, ex.getMessage());
+			return false;
+		}
+		return true;
+	}
+	
 	/**
 	 * Move file a to b in one atomic operation
 	 * 
@@ -143,17 +212,31 @@ public class FileUtil {
 	}
 		
 	/**
-	 * Get the path of the directory to unzip a file
+	 * Get the name of the associated query file for a (possibly compressed) CSV
 	 * 
-	 * @param f file
-	 * @return directory
+	 * @param name CSV file name
+	 * @return query file name or null
 	 */
-	public static File getUnzipDir(File f) {
-		String s = f.getPath();
-		if (! s.endsWith(EXT_ZIP)) {
+	public static String getQueryName(String name) {
+		name = stripCompression(name);
+		if (! name.endsWith(EXT_CSV)) {
 			return null;
 		}
-		return new File(s.replace(EXT_ZIP, ""));
+		return name.substring(0, name.length() - EXT_CSV.length()) + EXT_QRY;
+	}
+	
+	/**
+	 * Get the priority of an uploaded file from its name, 
+	 * e.g. fix.high.zip or reload.low.zip
+	 * 
+	 * @param name file name
+	 * @return priority
+	 */
+	public static Priority getPriority(String name) {
+		if (name.endsWith(EXT_HIGH)) {
+			return Priority.HIGH;
+		}
+		return name.endsWith(EXT_LOW) ? Priority.LOW : Priority.NORMAL;
 	}
 	
 	/**
@@ -164,63 +247,121 @@ public class FileUtil {
 	 * @return query file
 	 */
 	public static File getQueryFile(File dir, File f) {
-		String s = f.getName();
-		if (! s.endsWith(".csv")) {
-			return null;
+		String s = getQueryName(f.getName());
+		return (s != null) ? new File(dir, s) : null;
+	}
+	
+	/**
+	 * Get the (non-directory) entries of a zip file, sorted by name
+	 * 
+	 * @param zip zip file
+	 * @return list of entries
+	 */
+	public static List<ZipEntry> getEntries(ZipFile zip) {
+		return zip.stream().filter(e -> !e.isDirectory())
+							.sorted(Comparator.comparing(ZipEntry::getName))
+							.collect(Collectors.toList());
+	}
+
+	/**
+	 * Get the name of a file without the compression extension (if any)
+	 * 
+	 * @param name file name
+	 * @return file name without .gz or .bz2
+	 */
+	public static String stripCompression(String name) {
+		if (name.endsWith(EXT_GZ)) {
+			return name.substring(0, name.length() - EXT_GZ.length());
+		}
+		if (name.endsWith(EXT_BZ2)) {
+			return name.substring(0, name.length() - EXT_BZ2.length());
 		}
-		return new File(dir, s.replaceFirst(".csv", ".qr"));
+		return name;
 	}
 	
 	/**
-	 * Remove unzipped directory and files
+	 * Wrap an input stream in a decompressing stream, based on the extension
+	 * of the file name
 	 * 
-	 * @param f
-	 * @return 
+	 * @param name file name
+	 * @param is input stream
+	 * @return (decompressing) input stream
+	 * @throws IOException 
 	 */
-	public static boolean remove(File f) {
-		LOG.info("Removing {}", f);
-		
-		try {
-			Stream<Path> paths = Files.walk(getUnzipDir(f).toPath())
-									.sorted(Comparator.reverseOrder());
-			for (Path path: paths.toArray(Path[]::new)) {
-				Files.delete(path);
-			}
-		} catch (IOException ex) {
-			LOG.error("Error removing {} : {}", f, ex.getMessage());
-			return false;
+	public static InputStream decompress(String name, InputStream is) 
+															throws IOException {
+		if (name.endsWith(EXT_GZ)) {
+			return new GZIPInputStream(is, 64 * 1024);
 		}
-		return true;
+		if (name.endsWith(EXT_BZ2)) {
+			return new BZip2CompressorInputStream(new BufferedInputStream(is));
+		}
+		return is;
 	}
 	
 	/**
-	 * Unzip file to directory
+	 * Get the RDF format of a (possibly compressed) file, based on its extension.
+	 * Only a limited set of formats is accepted, and only when a parser is
+	 * available.
 	 * 
-	 * @param p
-	 * @return 
+	 * @param name file name
+	 * @return RDF format or empty
 	 */
-	public static boolean unzip(File p) {
-		LOG.info("Unzipping {}", p);
-		
-		File d = getUnzipDir(p);
-		
-		try (ZipFile f = new ZipFile(p)) {
-			Files.createDirectory(d.toPath());
-			
-			for(ZipEntry e: f.stream().toArray(ZipEntry[]::new)) {
-				Path u = Paths.get(d.getAbsolutePath(), e.getName());
-				try (InputStream is = f.getInputStream(e)) {
-					Files.copy(is, u);
-				}
+	public static Optional<RDFFormat> getRDFFormat(String name) {
+		String s = stripCompression(name);
+		int pos = s.lastIndexOf('.');
+		if (pos < 0) {
+			return Optional.empty();
+		}
+		RDFFormat format = FORMATS.get(s.substring(pos).toLowerCase(Locale.ROOT));
+		return (format != null && RDFParserRegistry.getInstance().has(format)) 
+				? Optional.of(format) : Optional.empty();
+	}
+	
+	/**
+	 * Get the upload options from the manifest file in the zip (if any)
+	 * 
+	 * @param zip zip file
+	 * @return properties, empty when there is no manifest
+	 * @throws IOException 
+	 */
+	public static Properties getManifest(ZipFile zip) throws IOException {
+		Properties p = new Properties();
+		ZipEntry e = zip.getEntry(MANIFEST);
+		if (e != null) {
+			try (InputStream is = zip.getInputStream(e)) {
+				p.load(is);
 			}
-		} catch (IOException ex) {
-			LOG.error("Error unzipping {} : {}", p, ex.getMessage());
-			remove(d);
-			return false;
 		}
-		return true;
+		return p;
 	}
-
+	
+	/**
+	 * Calculate a fingerprint of the contents of a zip file, 
+	 * based on the names and checksums of the entries.
+	 * 
+	 * @param entries zip entries
+	 * @return fingerprint as string
+	 */
+	public static String fingerprint(List<ZipEntry> entries) {
+		CRC32 crc = new CRC32();
+		for (ZipEntry e: entries) {
+			crc.update((e.getName() + ":" + e.getCrc() + "\n")
+										.getBytes(StandardCharsets.UTF_8));
+		}
+		return Long.toHexString(crc.getValue());
+	}
+	
+	/**
+	 * Get the checkpoint file of a zip file being processed
+	 * 
+	 * @param f zip file in the processing directory
+	 * @return checkpoint file
+	 */
+	public static Path getCheckpointFile(File f) {
+		return Paths.get(f.getPath() + EXT_CHECKPOINT);
+	}
+	
 	/**
 	 * Hey name of the repository
 	 * 
@@ -236,8 +377,10 @@ public class FileUtil {
 	/**
 	 * 
 	 * @param dir 
+	 * @param metrics metrics registry
 	 */
-	public FileUtil(String dir) {
+	public FileUtil(String dir, MetricRegistry metrics) {
 		this.dir = dir;
+		this.metrics = metrics;
 	}
 }
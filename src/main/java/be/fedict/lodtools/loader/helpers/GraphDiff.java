@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+/**
+ * Compare two snapshots of an N-Triples file.
+ * 
+ * Both snapshots are stored as sorted (and compressed) files, 
+ * with one statement per line in a canonical form, so they can be compared
+ * line by line without loading them into memory.
+ * 
+ * Blank nodes cannot be compared (their labels are local to a file), 
+ * so files containing blank nodes are rejected.
+ * The same sort is used for removing duplicates, where blank nodes are allowed.
+ * 
+ * @author Bart.Hanssens
+ */
+public class GraphDiff {
+	private final Path tmpDir;
+	private final int sortLines;
+	private final long sortChars;
+	
+	/**
+	 * Receives the differences between two snapshots
+	 */
+	public interface DiffHandler {
+		/**
+		 * Statement only in the new snapshot
+		 * 
+		 * @param st statement
+		 * @throws IOException 
+		 */
+		void added(Statement st) throws IOException;
+		
+		/**
+		 * Statement only in the old snapshot
+		 * 
+		 * @param st statement
+		 * @throws IOException 
+		 */
+		void removed(Statement st) throws IOException;
+	}
+	
+	/**
+	 * Convert a statement to a line in canonical N-Triples form
+	 * 
+	 * @param st statement
+	 * @return line (without line break)
+	 */
+	private static String toLine(Statement st) {
+		return NTriplesUtil.toNTriplesString(st.getSubject()) + " "
+				+ NTriplesUtil.toNTriplesString(st.getPredicate()) + " "
+				+ NTriplesUtil.toNTriplesString(st.getObject()) + " .";
+	}
+	
+	/**
+	 * Convert a line in canonical N-Triples form to a statement
+	 * 
+	 * @param line line
+	 * @param vf value factory
+	 * @return statement
+	 */
+	private static Statement toStatement(String line, ValueFactory vf) {
+		// subject and predicate never contain spaces in canonical form
+		int s = line.indexOf(' ');
+		int p = line.indexOf(' ', s + 1);
+		int o = line.length() - 2;
+		
+		return vf.createStatement(
+				NTriplesUtil.parseResource(line.substring(0, s), vf),
+				NTriplesUtil.parseURI(line.substring(s + 1, p), vf),
+				NTriplesUtil.parseValue(line.substring(p + 1, o), vf));
+	}
+	
+	/**
+	 * Parse an N-Triples file and store the distinct statements, sorted and 
+	 * in canonical form, as a (compressed) file
+	 * 
+	 * @param is input stream
+	 * @param out output file
+	 * @param bnodes allow blank nodes
+	 * @return number of distinct statements
+	 * @throws IOException
+	 * @throws RDFParseException 
+	 * @throws RDFHandlerException when blank nodes are not allowed but found
+	 */
+	private long sort(InputStream is, Path out, boolean bnodes) 
+										throws IOException, RDFParseException {
+		try (ExternalSort sort = new ExternalSort(tmpDir, sortLines, sortChars, true)) {
+			RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES);
+			if (bnodes) {
+				// labels are only used within the output file, so keep them short
+				parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+			}
+			parser.setRDFHandler(new AbstractRDFHandler() {
+				@Override
+				public void handleStatement(Statement st) throws RDFHandlerException {
+					if (!bnodes && (st.getSubject() instanceof BNode 
+									|| st.getObject() instanceof BNode)) {
+						throw new RDFHandlerException(
+								"Blank nodes cannot be compared, use a full load instead");
+					}
+					try {
+						sort.add(toLine(st));
+					} catch (IOException ex) {
+						throw new RDFHandlerException(ex);
+					}
+				}
+			});
+			parser.parse(is, "");
+			return sort.sort(out);
+		}
+	}
+	
+	/**
+	 * Parse an N-Triples file and store the distinct statements as a snapshot 
+	 * that can be compared with the previous one
+	 * 
+	 * @param is input stream
+	 * @param out snapshot file
+	 * @return number of distinct statements
+	 * @throws IOException
+	 * @throws RDFParseException 
+	 * @throws RDFHandlerException when the file contains blank nodes
+	 */
+	public long snapshot(InputStream is, Path out) throws IOException, RDFParseException {
+		return sort(is, out, false);
+	}
+	
+	/**
+	 * Parse an N-Triples file and store the distinct statements, 
+	 * to be loaded as a whole.
+	 * 
+	 * Blank nodes are allowed: the labels are only unique within the output
+	 * file, which is fine as long as the file is loaded in one parse.
+	 * 
+	 * @param is input stream
+	 * @param out output file
+	 * @return number of distinct statements
+	 * @throws IOException
+	 * @throws RDFParseException 
+	 */
+	public long dedup(InputStream is, Path out) throws IOException, RDFParseException {
+		return sort(is, out, true);
+	}
+	
+	/**
+	 * Compare two snapshots
+	 * 
+	 * @param oldFile previous snapshot, may not exist
+	 * @param newFile new snapshot
+	 * @param vf value factory
+	 * @param handler receives the added and removed statements
+	 * @throws IOException 
+	 */
+	public static void diff(Path oldFile, Path newFile, ValueFactory vf, 
+									DiffHandler handler) throws IOException {
+		boolean hasOld = Files.exists(oldFile);
+		
+		try (BufferedReader o = hasOld ? ExternalSort.reader(oldFile) : null;
+			BufferedReader n = ExternalSort.reader(newFile)) {
+			String oldLine = hasOld ? o.readLine() : null;
+			String newLine = n.readLine();
+			
+			while (oldLine != null || newLine != null) {
+				int cmp = (oldLine == null) ? 1 
+						: (newLine == null) ? -1 : oldLine.compareTo(newLine);
+				if (cmp < 0) {
+					handler.removed(toStatement(oldLine, vf));
+					oldLine = o.readLine();
+				} else if (cmp > 0) {
+					handler.added(toStatement(newLine, vf));
+					newLine = n.readLine();
+				} else {
+					oldLine = o.readLine();
+					newLine = n.readLine();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param tmpDir directory for temporary files
+	 * @param sortLines maximum number of lines sorted in memory
+	 * @param sortChars maximum number of characters sorted in memory
+	 */
+	public GraphDiff(Path tmpDir, int sortLines, long sortChars) {
+		this.tmpDir = tmpDir;
+		this.sortLines = sortLines;
+		this.sortChars = sortChars;
+	}
+}
@@ -25,34 +25,46 @@
  */
 package be.fedict.lodtools.loader.helpers;
 
-import io.dropwizard.lifecycle.Managed;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
+import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.manager.RepositoryManager;
 
 /**
- * Life-cycle management helper class
+ * Remote triple store, loading data via HTTP transactions
  * 
  * @author Bart.Hanssens
  */
-public class ManagedRepositoryManager implements Managed {
+public class HttpBackend implements LoadBackend {
 	private final RepositoryManager mgr;
+	
+	@Override
+	public Set<String> getRepositoryNames() {
+		Set<String> names = new LinkedHashSet<>();
+		for (Repository repo: mgr.getAllRepositories()) {
+			names.add(FileUtil.repoName(repo));
+		}
+		return names;
+	}
 
 	@Override
-	public void start() throws Exception {
+	public Repository getRepository(String name) {
+		return mgr.getRepository(name);
 	}
 
 	@Override
-	public void stop() throws Exception {
+	public void shutDown() {
 		mgr.getInitializedRepositories().forEach(r -> r.shutDown());
 		mgr.shutDown();
 	}
-
+	
 	/**
 	 * Constructor
 	 * 
 	 * @param mgr RDF repository manager
 	 */
-	public ManagedRepositoryManager(RepositoryManager mgr) {
+	public HttpBackend(RepositoryManager mgr) {
 		this.mgr = mgr;
 		mgr.initialize();
 	}
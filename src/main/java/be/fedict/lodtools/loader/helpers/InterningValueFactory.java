@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.AbstractValueFactory;
+
+/**
+ * Value factory returning the same instance for frequently used IRIs 
+ * (like predicates and classes), instead of creating a new one every time.
+ * 
+ * Literals are not cached: looking them up would require creating a key 
+ * that is almost as large as the literal itself.
+ * 
+ * The cache is bounded and shared by all threads, the least recently used 
+ * values are evicted first.
+ * 
+ * @author Bart.Hanssens
+ */
+public class InterningValueFactory extends AbstractValueFactory {
+	private final Cache<String,IRI> cache;
+	
+	@Override
+	public IRI createIRI(String iri) {
+		IRI cached = cache.getIfPresent(iri);
+		if (cached == null) {
+			cached = super.createIRI(iri);
+			cache.put(iri, cached);
+		}
+		return cached;
+	}
+
+	@Override
+	public IRI createIRI(String namespace, String localName) {
+		return createIRI(namespace + localName);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param size maximum number of cached IRIs
+	 * @param metrics metrics registry
+	 */
+	public InterningValueFactory(int size, MetricRegistry metrics) {
+		this.cache = CacheBuilder.newBuilder()
+								.maximumSize(size)
+								.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+								.recordStats()
+								.build();
+		
+		metrics.register(MetricRegistry.name(InterningValueFactory.class, "size"), 
+						(Gauge<Long>) () -> cache.size());
+		metrics.register(MetricRegistry.name(InterningValueFactory.class, "hits"), 
+						(Gauge<Long>) () -> cache.stats().hitCount());
+		metrics.register(MetricRegistry.name(InterningValueFactory.class, "misses"), 
+						(Gauge<Long>) () -> cache.stats().missCount());
+		metrics.register(MetricRegistry.name(InterningValueFactory.class, "hitRate"), 
+						(Gauge<Double>) () -> cache.stats().hitRate());
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Send changes of the status of jobs as server-sent events, 
+ * to the clients listening to the events of a repository.
+ * 
+ * Each client has its own queue, holding only the latest change per job,
+ * so a slow client does not slow down the processing of the files.
+ * Clients get a comment every 30 seconds, so proxies do not close an idle
+ * connection and disconnected clients are noticed.
+ * 
+ * @author Bart.Hanssens
+ */
+public class JobEvents implements Managed {
+	private final static Logger LOG = LoggerFactory.getLogger(JobEvents.class);
+	
+	private final static String EVENT = "status";
+	private final static String HEARTBEAT = "heartbeat";
+	private final static int HEARTBEAT_SECONDS = 30;
+	private final static int THREADS = 4;
+	
+	private final ObjectMapper mapper;
+	private final Map<String,Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+	// fixed number of threads, at most one task per client is waiting
+	private final ScheduledExecutorService exec = Executors.newScheduledThreadPool(THREADS);
+	
+	/**
+	 * Client listening to the events of a repository
+	 */
+	private class Subscriber implements Runnable {
+		private final String repo;
+		private final EventOutput out = new EventOutput();
+		private final Map<String,JobStatus> pending = new LinkedHashMap<>();
+		private boolean sending = false;
+		
+		/**
+		 * Add a job to the events to be sent, replacing a previous change 
+		 * of the same job that was not sent yet
+		 * 
+		 * @param job job status
+		 */
+		private synchronized void offer(JobStatus job) {
+			pending.put(job.getName(), job);
+			if (!sending && !exec.isShutdown()) {
+				sending = true;
+				exec.execute(this);
+			}
+		}
+		
+		/**
+		 * Send a heartbeat, unless events are already being sent
+		 */
+		private synchronized void heartbeat() {
+			if (!sending && !exec.isShutdown()) {
+				sending = true;
+				exec.execute(this::ping);
+			}
+		}
+		
+		/**
+		 * Write a comment, followed by the events of changes in the meantime
+		 */
+		private void ping() {
+			try {
+				out.write(new OutboundEvent.Builder().comment(HEARTBEAT).build());
+			} catch (IOException ex) {
+				LOG.debug("Client of {} disconnected", repo);
+				unsubscribe(this);
+				return;
+			}
+			run();
+		}
+		
+		/**
+		 * Get the next job to send
+		 * 
+		 * @return job status or null
+		 */
+		private synchronized JobStatus poll() {
+			Iterator<JobStatus> it = pending.values().iterator();
+			if (!it.hasNext()) {
+				sending = false;
+				return null;
+			}
+			JobStatus job = it.next();
+			it.remove();
+			return job;
+		}
+		
+		@Override
+		public void run() {
+			JobStatus job;
+			while ((job = poll()) != null) {
+				try {
+					// serialized when sent, so the latest status is used
+					out.write(new OutboundEvent.Builder()
+									.name(EVENT)
+									.mediaType(MediaType.APPLICATION_JSON_TYPE)
+									.data(String.class, mapper.writeValueAsString(job))
+									.build());
+				} catch (JsonProcessingException ex) {
+					LOG.warn("Could not serialize status of {}", job.getName());
+				} catch (IOException ex) {
+					LOG.debug("Client of {} disconnected", repo);
+					unsubscribe(this);
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param repo repository name
+		 */
+		private Subscriber(String repo) {
+			this.repo = repo;
+		}
+	}
+	
+	/**
+	 * Stop sending events to a client, and remove the repository when there
+	 * are no clients left
+	 * 
+	 * @param sub client
+	 */
+	private void unsubscribe(Subscriber sub) {
+		subscribers.computeIfPresent(sub.repo, (k,v) -> {
+			v.remove(sub);
+			return v.isEmpty() ? null : v;
+		});
+		try {
+			sub.out.close();
+		} catch (IOException ex) {
+			LOG.debug("Could not close event output of {}", sub.repo);
+		}
+	}
+	
+	/**
+	 * Send the status of a job to the clients listening to its repository
+	 * 
+	 * @param job job status
+	 */
+	private void send(JobStatus job) {
+		Set<Subscriber> subs = subscribers.get(job.getRepo());
+		if (subs == null) {
+			return;
+		}
+		for (Subscriber sub: subs) {
+			if (sub.out.isClosed()) {
+				unsubscribe(sub);
+			} else {
+				sub.offer(job);
+			}
+		}
+	}
+	
+	/**
+	 * Send a heartbeat to all idle clients, removing closed clients
+	 */
+	private void heartbeat() {
+		for (Set<Subscriber> subs: subscribers.values()) {
+			for (Subscriber sub: subs) {
+				if (sub.out.isClosed()) {
+					unsubscribe(sub);
+				} else {
+					sub.heartbeat();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Start listening to the events of a repository
+	 * 
+	 * @param repo repository name
+	 * @return event output
+	 */
+	public EventOutput subscribe(String repo) {
+		Subscriber sub = new Subscriber(repo);
+		subscribers.compute(repo, (k,v) -> {
+			Set<Subscriber> subs = (v != null) ? v : ConcurrentHashMap.newKeySet();
+			subs.add(sub);
+			return subs;
+		});
+		return sub.out;
+	}
+
+	@Override
+	public void start() throws Exception {
+		exec.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, 
+										HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void stop() throws Exception {
+		exec.shutdown();
+		exec.awaitTermination(10, TimeUnit.SECONDS);
+		subscribers.values().forEach(subs -> subs.forEach(this::unsubscribe));
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param index index of job status
+	 * @param mapper JSON object mapper
+	 */
+	public JobEvents(JobIndex index, ObjectMapper mapper) {
+		this.mapper = mapper;
+		index.addListener(this::send);
+	}
+}
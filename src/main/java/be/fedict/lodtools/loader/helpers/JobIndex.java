@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.helpers.JobStatus.State;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the status of uploaded files.
+ * 
+ * Queued and running jobs are always kept, only the most recently completed
+ * jobs are kept (least recently used are removed first).
+ * Listeners are notified of every change of state or progress.
+ * 
+ * @author Bart.Hanssens
+ */
+public class JobIndex {
+	private final static Logger LOG = LoggerFactory.getLogger(JobIndex.class);
+	
+	private final Map<String,JobStatus> active = new ConcurrentHashMap<>();
+	private final Map<String,JobStatus> completed;
+	private final Map<String,CompletableFuture<JobStatus>> waiting = 
+														new ConcurrentHashMap<>();
+	private final List<Consumer<JobStatus>> listeners = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * Get key for a job
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return key
+	 */
+	private static String key(String repo, String name) {
+		return repo + "/" + name;
+	}
+	
+	/**
+	 * Notify the listeners of a change
+	 * 
+	 * @param job job status
+	 */
+	private void changed(JobStatus job) {
+		for (Consumer<JobStatus> l: listeners) {
+			try {
+				l.accept(job);
+			} catch (RuntimeException ex) {
+				LOG.warn("Listener failed: {}", ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Add a listener, to be notified of changes of state or progress
+	 * 
+	 * @param listener listener
+	 */
+	public void addListener(Consumer<JobStatus> listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Add a job to the index, replacing the previous job with the same name
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @param state initial state
+	 * @return job status
+	 */
+	public JobStatus add(String repo, String name, State state) {
+		String key = key(repo, name);
+		JobStatus job = new JobStatus(repo, name, state, this::changed);
+		
+		synchronized (completed) {
+			completed.remove(key);
+		}
+		active.put(key, job);
+		changed(job);
+		return job;
+	}
+	
+	/**
+	 * Mark a job as done or failed
+	 * 
+	 * @param job job status
+	 * @param res result
+	 */
+	public void finish(JobStatus job, boolean res) {
+		String key = key(job.getRepo(), job.getName());
+		job.setState(res ? State.DONE : State.FAILED);
+		
+		synchronized (completed) {
+			completed.put(key, job);
+		}
+		active.remove(key, job);
+		
+		CompletableFuture<JobStatus> f = waiting.remove(key);
+		if (f != null) {
+			f.complete(job);
+		}
+	}
+	
+	/**
+	 * Get a future that is completed when the job is done or failed
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return future or null if the job is not found
+	 */
+	public CompletableFuture<JobStatus> whenCompleted(String repo, String name) {
+		String key = key(repo, name);
+		JobStatus job = get(repo, name);
+		if (job == null || job.isCompleted()) {
+			return (job == null) ? null : CompletableFuture.completedFuture(job);
+		}
+		CompletableFuture<JobStatus> f = waiting.computeIfAbsent(key, 
+												k -> new CompletableFuture<>());
+		// job may have finished in the meantime
+		job = get(repo, name);
+		if (job != null && job.isCompleted() && waiting.remove(key, f)) {
+			f.complete(job);
+		}
+		return f;
+	}
+	
+	/**
+	 * Get the status of a job
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return job status or null if not found
+	 */
+	public JobStatus get(String repo, String name) {
+		String key = key(repo, name);
+		JobStatus job = active.get(key);
+		if (job != null) {
+			return job;
+		}
+		synchronized (completed) {
+			return completed.get(key);
+		}
+	}
+	
+	/**
+	 * Rebuild the index of completed jobs from the done and failed directories,
+	 * oldest first. Queued jobs are added when the job queue is recovered.
+	 * 
+	 * @param root root directory
+	 * @param repos repository names
+	 */
+	public void load(String root, List<String> repos) {
+		List<File> files = new ArrayList<>();
+		for (String repo: repos) {
+			for (String dir: new String[] { FileUtil.DIR_DONE, FileUtil.DIR_FAILED }) {
+				File[] f = Paths.get(root, repo, dir).toFile()
+								.listFiles((d, n) -> n.endsWith(FileUtil.EXT_ZIP));
+				if (f != null) {
+					files.addAll(Arrays.asList(f));
+				}
+			}
+		}
+		files.sort(Comparator.comparingLong(File::lastModified));
+		
+		synchronized (completed) {
+			for (File f: files) {
+				File dir = f.getParentFile();
+				String repo = dir.getParentFile().getName();
+				State state = dir.getName().equals(FileUtil.DIR_DONE) ? State.DONE 
+																	: State.FAILED;
+				completed.put(key(repo, f.getName()), 
+								new JobStatus(repo, f.getName(), state, this::changed));
+			}
+			LOG.info("Loaded status of {} completed jobs", completed.size());
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param maxCompleted maximum number of completed jobs kept
+	 */
+	public JobIndex(int maxCompleted) {
+		this.completed = new LinkedHashMap<String,JobStatus>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,JobStatus> e) {
+				return size() > maxCompleted;
+			}
+		};
+	}
+}
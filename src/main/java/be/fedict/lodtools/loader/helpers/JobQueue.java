@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable queue of uploaded files to be processed.
+ * 
+ * Every job is written to an append-only journal in the root directory before
+ * it is scheduled, so no upload is lost when the application is restarted.
+ * 
+ * Low priority (bulk) jobs are deferred when too many jobs are waiting,
+ * they are queued when another job is finished (or by a later scan). 
+ * The priority of deferred jobs is kept in the journal as well.
+ * 
+ * @author Bart.Hanssens
+ */
+public class JobQueue {
+	private final static Logger LOG = LoggerFactory.getLogger(JobQueue.class);
+	
+	public final static String JOURNAL = "jobs.journal";
+	
+	private final static String QUEUED = "QUEUED";
+	private final static String DEFERRED = "DEFERRED";
+	private final static String DONE = "DONE";
+	private final static String FAILED = "FAILED";
+	
+	private final String dir;
+	private final Path journal;
+	private final LaneScheduler lanes;
+	private final DirProcessor processor;
+	private final JobIndex index;
+	private final MetricRegistry metrics;
+	private final int maxQueuedBulk;
+	
+	private final Set<String> pending = new HashSet<>();
+	private final Map<String,Priority> deferred = new LinkedHashMap<>();
+	private final Set<String> reserved = new HashSet<>();
+	private FileChannel channel;
+	
+	/**
+	 * Get key for a job
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return key
+	 */
+	private static String key(String repo, String name) {
+		return repo + "\t" + name;
+	}
+	
+	/**
+	 * Append a line to the journal and flush it to disk
+	 * 
+	 * @param event event
+	 * @param repo repository name
+	 * @param name file name
+	 * @throws IOException 
+	 */
+	private void append(String event, String repo, String name) throws IOException {
+		append(event, key(repo, name));
+	}
+	
+	/**
+	 * Append a line to the journal and flush it to disk
+	 * 
+	 * @param event event
+	 * @param name key of the job, optionally followed by other fields
+	 * @throws IOException 
+	 */
+	private void append(String event, String name) throws IOException {
+		String line = event + "\t" + name + "\n";
+		try {
+			channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+			channel.force(false);
+		} catch (IOException ex) {
+			LOG.error("Could not write {} {} to journal: {}", event, name, ex.getMessage());
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Check if the file still has to be processed
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return true if file is in the upload or processing directory
+	 */
+	private boolean exists(String repo, String name) {
+		return Files.exists(Paths.get(dir, repo, name)) 
+			|| Files.exists(Paths.get(dir, repo, FileUtil.DIR_PROCESS, name));
+	}
+	
+	/**
+	 * Process the file and mark the job as done or failed
+	 * 
+	 * @param job status of the job
+	 * @param queued time (in nanoseconds) the job was queued
+	 */
+	private void run(JobStatus job, long queued) {
+		String repo = job.getRepo();
+		String name = job.getName();
+		
+		metrics.timer(MetricRegistry.name(JobQueue.class, repo, "wait"))
+				.update(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+		job.setState(JobStatus.State.PROCESSING);
+		boolean res = false;
+		try {
+			res = processor.processFile(repo, name, job);
+		} finally {
+			finish(job, res);
+		}
+	}
+	
+	/**
+	 * Process a file directly from the request
+	 * 
+	 * @param job status of the job
+	 * @param is input stream of the request
+	 * @param queued time (in nanoseconds) the job was queued
+	 * @param done completed when the job is done or failed
+	 */
+	private void runStream(JobStatus job, InputStream is, long queued, 
+										CompletableFuture<JobStatus> done) {
+		metrics.timer(MetricRegistry.name(JobQueue.class, job.getRepo(), "wait"))
+				.update(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+		job.setState(JobStatus.State.PROCESSING);
+		boolean res = false;
+		try {
+			res = processor.processStream(job.getRepo(), job.getName(), is, job);
+		} finally {
+			index.finish(job, res);
+			done.complete(job);
+			requeue();
+		}
+	}
+	
+	/**
+	 * Mark a job as done or failed
+	 * 
+	 * @param job status of the job
+	 * @param res result
+	 */
+	private synchronized void finish(JobStatus job, boolean res) {
+		try {
+			append(res ? DONE : FAILED, job.getRepo(), job.getName());
+		} catch (IOException ex) {
+			// already logged, the job will be processed again after a restart
+		}
+		pending.remove(key(job.getRepo(), job.getName()));
+		index.finish(job, res);
+		requeue();
+	}
+	
+	/**
+	 * Queue deferred jobs, in order of arrival, as long as they are admitted
+	 */
+	private synchronized void requeue() {
+		for (Map.Entry<String,Priority> e: new ArrayList<>(deferred.entrySet())) {
+			if (!admits(e.getValue())) {
+				return;
+			}
+			String[] parts = e.getKey().split("\t");
+			try {
+				if (!submit(parts[0], parts[1], e.getValue())) {
+					// file removed in the meantime
+					deferred.remove(e.getKey());
+				}
+			} catch (IOException ex) {
+				// already logged, the file is picked up again by the next scan
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Check if a job with a given priority can be queued.
+	 * Low priority jobs are not accepted when too many jobs are waiting.
+	 * 
+	 * @param priority priority
+	 * @return true if the job can be queued
+	 */
+	public boolean admits(Priority priority) {
+		return priority != Priority.LOW || maxQueuedBulk == 0
+				|| lanes.getQueueDepth() < maxQueuedBulk;
+	}
+	
+	/**
+	 * Add an uploaded file to the queue, without admission control
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @param priority priority
+	 * @param log write the job to the journal
+	 * @return true if added
+	 * @throws IOException when the job could not be written to the journal
+	 */
+	private synchronized boolean queue(String repo, String name, Priority priority, 
+									boolean log) throws IOException {
+		String key = key(repo, name);
+		if (pending.contains(key) || !exists(repo, name)) {
+			return false;
+		}
+		LOG.info("Queueing {} for {}, priority {}", name, repo, priority);
+		if (log) {
+			append(QUEUED, key + "\t" + priority);
+		}
+		pending.add(key);
+		JobStatus job = index.add(repo, name, JobStatus.State.QUEUED);
+		job.setPriority(priority);
+		long queued = System.nanoTime();
+		lanes.submit(repo, priority, () -> run(job, queued));
+		return true;
+	}
+	
+	/**
+	 * Defer an uploaded file, without admission control
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @param priority priority
+	 * @param log write the job to the journal
+	 * @throws IOException when the job could not be written to the journal
+	 */
+	private synchronized void defer(String repo, String name, Priority priority, 
+									boolean log) throws IOException {
+		String key = key(repo, name);
+		if (deferred.get(key) == priority) {
+			return;
+		}
+		LOG.info("Deferring {} for {}, too many jobs waiting", name, repo);
+		if (log) {
+			append(DEFERRED, key + "\t" + priority);
+		}
+		deferred.put(key, priority);
+		JobStatus job = index.add(repo, name, JobStatus.State.QUEUED);
+		job.setPriority(priority);
+		metrics.meter(MetricRegistry.name(JobQueue.class, repo, "deferred")).mark();
+	}
+	
+	/**
+	 * Check if a file is already queued
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return true if queued
+	 */
+	public synchronized boolean isPending(String repo, String name) {
+		return pending.contains(key(repo, name));
+	}
+	
+	/**
+	 * Reserve the name of a file that is being uploaded, so it is not picked
+	 * up by a scan before the upload is submitted
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return false if the file is already queued or being uploaded
+	 */
+	public synchronized boolean reserve(String repo, String name) {
+		String key = key(repo, name);
+		return !pending.contains(key) && reserved.add(key);
+	}
+	
+	/**
+	 * Release the name of a file that was reserved
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 */
+	public synchronized void release(String repo, String name) {
+		reserved.remove(key(repo, name));
+	}
+	
+	/**
+	 * Add an uploaded file to the queue, unless it is already queued.
+	 * The priority of a deferred file is kept, otherwise it is derived from 
+	 * the file name.
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @return true if queued or deferred
+	 * @throws IOException when the job could not be written to the journal
+	 */
+	public synchronized boolean submit(String repo, String name) throws IOException {
+		Priority priority = deferred.get(key(repo, name));
+		return submit(repo, name, (priority != null) ? priority 
+													: FileUtil.getPriority(name));
+	}
+	
+	/**
+	 * Add an uploaded file to the queue, unless it is already queued. 
+	 * Low priority files are deferred when too many jobs are waiting.
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @param priority priority
+	 * @return true if queued or deferred, false if already queued or not found
+	 * @throws IOException when the job could not be written to the journal
+	 */
+	public synchronized boolean submit(String repo, String name, Priority priority) 
+																throws IOException {
+		String key = key(repo, name);
+		reserved.remove(key);
+		if (pending.contains(key) || !exists(repo, name)) {
+			return false;
+		}
+		if (!admits(priority)) {
+			defer(repo, name, priority, true);
+			return true;
+		}
+		deferred.remove(key);
+		return queue(repo, name, priority, true);
+	}
+	
+	/**
+	 * Add a streamed file to the queue.
+	 * The file is read directly from the request when the job runs, 
+	 * so it is not written to the journal, and always has normal priority.
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @param is input stream of the request
+	 * @return completed when the job is done or failed
+	 */
+	public CompletableFuture<JobStatus> stream(String repo, String name, InputStream is) {
+		LOG.info("Queueing stream {} for {}", name, repo);
+		CompletableFuture<JobStatus> done = new CompletableFuture<>();
+		JobStatus job = index.add(repo, name, JobStatus.State.QUEUED);
+		long queued = System.nanoTime();
+		lanes.submit(repo, Priority.NORMAL, () -> runStream(job, is, queued, done));
+		return done;
+	}
+	
+	/**
+	 * Queue a file found in the upload or processing directory
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 */
+	private synchronized void scan(String repo, String name) {
+		if (reserved.contains(key(repo, name))) {
+			// still being uploaded
+			return;
+		}
+		try {
+			submit(repo, name);
+		} catch (IOException ex) {
+			// already logged, the file is picked up again by the next scan
+		}
+	}
+	
+	/**
+	 * Queue zip files in the upload and processing directories of the 
+	 * repositories that are not queued yet
+	 * 
+	 * @param repos repository names
+	 */
+	public void scan(Collection<String> repos) {
+		for (String repo: repos) {
+			for (Path p: new Path[] { Paths.get(dir, repo, FileUtil.DIR_PROCESS), 
+										Paths.get(dir, repo) }) {
+				try (Stream<Path> files = Files.list(p)) {
+					files.map(f -> f.getFileName().toString())
+						.filter(f -> f.endsWith(FileUtil.EXT_ZIP))
+						.sorted()
+						.forEach(f -> scan(repo, f));
+				} catch (IOException ex) {
+					LOG.error("Could not scan {} : {}", p, ex.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Delete the temporary files of streamed uploads, left in the processing 
+	 * directory by a crash of an older version that stored streams first
+	 * 
+	 * @param repo repository name
+	 */
+	private void cleanup(String repo) {
+		Path p = Paths.get(dir, repo, FileUtil.DIR_PROCESS);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(p, "stream*.tmp")) {
+			for (Path f: files) {
+				LOG.warn("Deleting leftover stream {}", f);
+				Files.delete(f);
+			}
+		} catch (IOException ex) {
+			LOG.warn("Could not clean up {} : {}", p, ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Get the priority from a journal line, older journals do not have one
+	 * 
+	 * @param parts fields of the line
+	 * @return priority
+	 */
+	private static Priority getPriority(String[] parts) {
+		if (parts.length > 3) {
+			try {
+				return Priority.valueOf(parts[3]);
+			} catch (IllegalArgumentException ex) {
+				LOG.warn("Invalid priority {} for {}", parts[3], parts[2]);
+			}
+		}
+		return FileUtil.getPriority(parts[2]);
+	}
+	
+	/**
+	 * Recover jobs after a restart.
+	 * 
+	 * The jobs in the journal that were not finished are queued again 
+	 * (if the file is still there) with the same priority, followed by any 
+	 * other zip file left in the upload or processing directories.
+	 * Deferred jobs keep their priority.
+	 * 
+	 * The journal is first compacted, only keeping the pending and deferred
+	 * jobs. The compacted journal is written to a temporary file that replaces
+	 * the journal, so the jobs are not lost when this fails halfway.
+	 * 
+	 * @param repos repository names
+	 * @throws IOException 
+	 */
+	public synchronized void recover(Collection<String> repos) throws IOException {
+		for (String repo: repos) {
+			cleanup(repo);
+		}
+		
+		Map<String,String> last = new LinkedHashMap<>();
+		Map<String,Priority> priorities = new HashMap<>();
+		
+		if (Files.exists(journal)) {
+			try (BufferedReader r = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = r.readLine()) != null) {
+					String[] parts = line.split("\t");
+					if (parts.length >= 3) {
+						String key = key(parts[1], parts[2]);
+						last.put(key, parts[0]);
+						priorities.put(key, getPriority(parts));
+					}
+				}
+			}
+		}
+		
+		// only keep the jobs of which the file is still there
+		last.entrySet().removeIf(e -> {
+			String[] parts = e.getKey().split("\t");
+			boolean keep = (e.getValue().equals(QUEUED) || e.getValue().equals(DEFERRED))
+							&& exists(parts[0], parts[1]);
+			if (!keep && e.getValue().equals(QUEUED)) {
+				LOG.warn("Dropping job {}, file not found", e.getKey());
+			}
+			return !keep;
+		});
+		
+		Path tmp = Paths.get(journal.toString() + ".tmp");
+		try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.CREATE, 
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			StringBuilder buf = new StringBuilder();
+			last.forEach((k,v) -> buf.append(v).append('\t').append(k).append('\t')
+										.append(priorities.get(k)).append('\n'));
+			c.write(ByteBuffer.wrap(buf.toString().getBytes(StandardCharsets.UTF_8)));
+			c.force(true);
+		}
+		Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, 
+								StandardCopyOption.ATOMIC_MOVE);
+		
+		channel = FileChannel.open(journal, StandardOpenOption.WRITE, 
+												StandardOpenOption.APPEND);
+		
+		// already in the journal
+		for (Map.Entry<String,String> e: last.entrySet()) {
+			String[] parts = e.getKey().split("\t");
+			Priority priority = priorities.get(e.getKey());
+			if (e.getValue().equals(QUEUED)) {
+				queue(parts[0], parts[1], priority, false);
+			} else {
+				defer(parts[0], parts[1], priority, false);
+			}
+		}
+		scan(repos);
+		LOG.info("Recovered {} jobs", pending.size());
+	}
+	
+	/**
+	 * Close the journal
+	 */
+	public synchronized void close() {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException ex) {
+			LOG.error("Could not close journal");
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param dir root directory
+	 * @param lanes scheduler for processing the files
+	 * @param processor file processor
+	 * @param index index of job status
+	 * @param metrics metrics registry
+	 * @param maxQueuedBulk maximum number of waiting jobs before low priority 
+	 *			jobs are deferred, 0 for no limit
+	 */
+	public JobQueue(String dir, LaneScheduler lanes, DirProcessor processor,
+				JobIndex index, MetricRegistry metrics, int maxQueuedBulk) {
+		this.dir = dir;
+		this.journal = Paths.get(dir, JOURNAL);
+		this.lanes = lanes;
+		this.processor = processor;
+		this.index = index;
+		this.metrics = metrics;
+		this.maxQueuedBulk = maxQueuedBulk;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Status and progress of an uploaded file
+ * 
+ * @author Bart.Hanssens
+ */
+public class JobStatus {
+	public enum State { QUEUED, PROCESSING, DONE, FAILED };
+	public enum Priority { HIGH, NORMAL, LOW };
+	
+	private final String repo;
+	private final String name;
+	private volatile State state;
+	private volatile Priority priority = Priority.NORMAL;
+	private volatile long updated = System.currentTimeMillis();
+	private final Consumer<JobStatus> listener;
+	
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong statements = new AtomicLong();
+	private final AtomicLong lines = new AtomicLong();
+	private volatile long expectedStatements = 0;
+	private volatile long expectedLines = 0;
+	
+	@JsonProperty
+	public String getRepo() {
+		return repo;
+	}
+	
+	@JsonProperty
+	public String getName() {
+		return name;
+	}
+	
+	@JsonProperty
+	public State getState() {
+		return state;
+	}
+	
+	/**
+	 * Set the state
+	 * 
+	 * @param state new state
+	 */
+	public void setState(State state) {
+		this.state = state;
+		progress();
+	}
+	
+	@JsonProperty
+	public Priority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Set the priority
+	 * 
+	 * @param priority priority
+	 */
+	public void setPriority(Priority priority) {
+		this.priority = priority;
+	}
+	
+	/**
+	 * Notify the listener of the progress made so far
+	 */
+	public void progress() {
+		this.updated = System.currentTimeMillis();
+		listener.accept(this);
+	}
+	
+	/**
+	 * Check if the job is done or failed
+	 * 
+	 * @return true if completed
+	 */
+	@JsonProperty
+	public boolean isCompleted() {
+		return state == State.DONE || state == State.FAILED;
+	}
+	
+	@JsonProperty
+	public long getUpdated() {
+		return updated;
+	}
+	
+	@JsonProperty
+	public long getBytes() {
+		return bytes.get();
+	}
+	
+	@JsonProperty
+	public long getStatements() {
+		return statements.get();
+	}
+	
+	@JsonProperty
+	public long getLines() {
+		return lines.get();
+	}
+	
+	@JsonProperty
+	public long getExpectedStatements() {
+		return expectedStatements;
+	}
+	
+	@JsonProperty
+	public long getExpectedLines() {
+		return expectedLines;
+	}
+	
+	/**
+	 * Set the number of statements and CSV lines to be loaded, when known
+	 * 
+	 * @param statements statements
+	 * @param lines CSV lines
+	 */
+	public void setExpected(long statements, long lines) {
+		this.expectedStatements = statements;
+		this.expectedLines = lines;
+		progress();
+	}
+	
+	/**
+	 * Add the number of (uncompressed) bytes of a file processed
+	 * 
+	 * @param n bytes
+	 */
+	public void addBytes(long n) {
+		bytes.addAndGet(n);
+	}
+	
+	/**
+	 * Add the number of statements loaded
+	 * 
+	 * @param n statements
+	 */
+	public void addStatements(long n) {
+		statements.addAndGet(n);
+	}
+	
+	/**
+	 * Add the number of CSV lines processed
+	 * 
+	 * @param n lines
+	 */
+	public void addLines(long n) {
+		lines.addAndGet(n);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param repo repository name
+	 * @param name file name
+	 * @param state initial state
+	 * @param listener listener to be notified of changes
+	 */
+	public JobStatus(String repo, String name, State state, 
+											Consumer<JobStatus> listener) {
+		this.repo = repo;
+		this.name = name;
+		this.state = state;
+		this.listener = listener;
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedule tasks in one lane per repository.
+ * 
+ * Tasks within the same lane are executed one after the other, while 
+ * different lanes share a fixed number of threads.
+ * Tasks with a higher priority are executed first, tasks with the same 
+ * priority in the order they were submitted.
+ * The number of threads running low priority (bulk) tasks can be limited,
+ * so threads remain available for other tasks.
+ * 
+ * @author Bart.Hanssens
+ */
+public class LaneScheduler {
+	private final static Logger LOG = LoggerFactory.getLogger(LaneScheduler.class);
+	
+	private final ThreadPoolExecutor exec;
+	private final int maxBulk;
+	private final Map<String,Lane> lanes = new ConcurrentHashMap<>();
+	private final AtomicLong seq = new AtomicLong();
+	
+	private final Queue<Lane> parked = new ArrayDeque<>();
+	private int bulkRunning = 0;
+	
+	/**
+	 * Task with a priority and a sequence number
+	 */
+	private class Task {
+		private final Priority priority;
+		private final long nr = seq.incrementAndGet();
+		private final Runnable runnable;
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param priority priority
+		 * @param runnable task to execute
+		 */
+		private Task(Priority priority, Runnable runnable) {
+			this.priority = priority;
+			this.runnable = runnable;
+		}
+	}
+	
+	private final static Comparator<Task> ORDER = 
+		Comparator.<Task,Priority>comparing(t -> t.priority).thenComparingLong(t -> t.nr);
+	
+	/**
+	 * Request to run the next task of a lane, ordered like that task.
+	 * Tickets are ignored when the lane was scheduled again in the mean time.
+	 */
+	private class Ticket implements Runnable, Comparable<Ticket> {
+		private final Lane lane;
+		private final Task task;
+		private final long generation;
+
+		@Override
+		public void run() {
+			lane.run(this);
+		}
+		
+		@Override
+		public int compareTo(Ticket o) {
+			return ORDER.compare(task, o.task);
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param lane lane
+		 * @param task next task in the lane
+		 * @param generation generation of the lane when the ticket was issued
+		 */
+		private Ticket(Lane lane, Task task, long generation) {
+			this.lane = lane;
+			this.task = task;
+			this.generation = generation;
+		}
+	}
+	
+	/**
+	 * Queue of tasks for one repository
+	 */
+	private class Lane {
+		private final String name;
+		private final PriorityQueue<Task> queue = new PriorityQueue<>(ORDER);
+		private boolean running = false;
+		private long generation = 0;
+		private Priority scheduled = null;
+		
+		/**
+		 * Hand a new ticket to the executor for the next task, if any.
+		 * Called while holding the lock.
+		 */
+		private void schedule() {
+			Task next = queue.peek();
+			if (next == null || exec.isShutdown()) {
+				scheduled = null;
+				return;
+			}
+			scheduled = next.priority;
+			exec.execute(new Ticket(this, next, ++generation));
+		}
+		
+		/**
+		 * Add a task to the queue, and schedule the lane if it is idle or 
+		 * only scheduled for tasks with a lower priority
+		 * 
+		 * @param task 
+		 */
+		private synchronized void add(Task task) {
+			queue.add(task);
+			if (!running && (scheduled == null || task.priority.compareTo(scheduled) < 0)) {
+				schedule();
+			}
+		}
+		
+		/**
+		 * Schedule the lane again after it was parked
+		 */
+		private synchronized void unpark() {
+			if (!running) {
+				schedule();
+			}
+		}
+		
+		/**
+		 * Get the number of tasks waiting in this lane
+		 * 
+		 * @return number of tasks
+		 */
+		private synchronized int depth() {
+			return queue.size();
+		}
+		
+		/**
+		 * Get the next task, unless the ticket is outdated or the task 
+		 * has to wait for a free bulk thread
+		 * 
+		 * @param ticket ticket
+		 * @return task or null
+		 */
+		private synchronized Task next(Ticket ticket) {
+			// tasks left at shutdown stay in the queue (and in the journal)
+			if (running || ticket.generation != generation || exec.isShutdown()) {
+				return null;
+			}
+			Task task = queue.peek();
+			if (task == null) {
+				scheduled = null;
+				return null;
+			}
+			if (task.priority == Priority.LOW && !acquireBulk(this)) {
+				scheduled = null;
+				return null;
+			}
+			running = true;
+			return queue.poll();
+		}
+		
+		/**
+		 * Run the next task, if the ticket is still valid
+		 * 
+		 * @param ticket ticket
+		 */
+		private void run(Ticket ticket) {
+			Task task = next(ticket);
+			if (task == null) {
+				return;
+			}
+			try {
+				task.runnable.run();
+			} catch (Exception e) {
+				LOG.error("Task in lane {} failed: {}", name, e.getMessage());
+			} finally {
+				// also after an error, otherwise the lane would be blocked forever
+				if (task.priority == Priority.LOW) {
+					releaseBulk();
+				}
+				// give other lanes a chance before running the next task
+				synchronized(this) {
+					running = false;
+					schedule();
+				}
+			}
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param name lane name
+		 */
+		private Lane(String name) {
+			this.name = name;
+		}
+	}
+	
+	/**
+	 * Try to start a low priority task, or park the lane when the maximum
+	 * number of low priority tasks is already running
+	 * 
+	 * @param lane lane of the task
+	 * @return true if the task can be started
+	 */
+	private synchronized boolean acquireBulk(Lane lane) {
+		if (maxBulk > 0 && bulkRunning >= maxBulk) {
+			if (!parked.contains(lane)) {
+				parked.add(lane);
+			}
+			return false;
+		}
+		bulkRunning++;
+		return true;
+	}
+	
+	/**
+	 * Mark a low priority task as finished, and schedule a parked lane
+	 */
+	private void releaseBulk() {
+		Lane lane;
+		synchronized(this) {
+			bulkRunning--;
+			lane = parked.poll();
+		}
+		if (lane != null) {
+			lane.unpark();
+		}
+	}
+	
+	/**
+	 * Submit a task to the lane of a repository
+	 * 
+	 * @param repo repository name
+	 * @param task task to execute
+	 */
+	public void submit(String repo, Runnable task) {
+		submit(repo, Priority.NORMAL, task);
+	}
+	
+	/**
+	 * Submit a task with a priority to the lane of a repository
+	 * 
+	 * @param repo repository name
+	 * @param priority priority
+	 * @param task task to execute
+	 */
+	public void submit(String repo, Priority priority, Runnable task) {
+		lanes.computeIfAbsent(repo, Lane::new).add(new Task(priority, task));
+	}
+	
+	/**
+	 * Get the number of tasks waiting in the lane of a repository
+	 * 
+	 * @param repo repository name
+	 * @return number of tasks
+	 */
+	public int getQueueDepth(String repo) {
+		Lane lane = lanes.get(repo);
+		return (lane != null) ? lane.depth() : 0;
+	}
+	
+	/**
+	 * Get the number of tasks waiting, per repository
+	 * 
+	 * @return map of repository names and number of tasks
+	 */
+	public Map<String,Integer> getQueueDepths() {
+		Map<String,Integer> depths = new HashMap<>();
+		lanes.forEach((k,v) -> depths.put(k, v.depth()));
+		return depths;
+	}
+	
+	/**
+	 * Get the total number of tasks waiting in all lanes
+	 * 
+	 * @return number of tasks
+	 */
+	public int getQueueDepth() {
+		return lanes.values().stream().mapToInt(Lane::depth).sum();
+	}
+	
+	/**
+	 * Stop accepting new tasks and wait for running tasks to finish.
+	 * Tasks that did not start yet are not run anymore.
+	 * 
+	 * @param timeout timeout
+	 * @param unit time unit
+	 * @throws InterruptedException 
+	 */
+	public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		exec.shutdown();
+		exec.awaitTermination(timeout, unit);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param threads maximum number of lanes running concurrently
+	 */
+	public LaneScheduler(int threads) {
+		this(threads, 0);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param threads maximum number of lanes running concurrently
+	 * @param maxBulk maximum number of low priority tasks running concurrently,
+	 *			0 for no limit
+	 */
+	public LaneScheduler(int threads, int maxBulk) {
+		this.exec = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+										new PriorityBlockingQueue<>());
+		this.maxBulk = maxBulk;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import com.codahale.metrics.Timer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * State of the processing of one uploaded zip file or stream
+ * 
+ * @author Bart.Hanssens
+ */
+public class LoadContext {
+	private final static Logger LOG = LoggerFactory.getLogger(LoadContext.class);
+	
+	private final RepositoryConnection con;
+	private final ZipFile zip;
+	private final long chunkSize;
+	private final Checkpoint cp;
+	private final RepoMetrics metrics;
+	private final JobStatus job;
+	private final Map<Path,Path> snapshots = new LinkedHashMap<>();
+
+	/**
+	 * Get repository connection
+	 * 
+	 * @return connection
+	 */
+	public RepositoryConnection getConnection() {
+		return con;
+	}
+
+	/**
+	 * Get zip file
+	 * 
+	 * @return zip file or null when processing a stream
+	 */
+	public ZipFile getZip() {
+		return zip;
+	}
+
+	/**
+	 * Get number of statements or lines per commit
+	 * 
+	 * @return chunk size, 0 when the entire zip is one transaction
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Get the checkpoint
+	 * 
+	 * @return checkpoint or null
+	 */
+	public Checkpoint getCheckpoint() {
+		return cp;
+	}
+	
+	/**
+	 * Get the metrics of the repository
+	 * 
+	 * @return metrics
+	 */
+	public RepoMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Get the status of the job
+	 * 
+	 * @return job status
+	 */
+	public JobStatus getJob() {
+		return job;
+	}
+	
+	/**
+	 * Count statements loaded
+	 * 
+	 * @param n number of statements
+	 */
+	public void addStatements(long n) {
+		metrics.getStatements().mark(n);
+		job.addStatements(n);
+	}
+	
+	/**
+	 * Count CSV lines processed
+	 * 
+	 * @param n number of lines
+	 */
+	public void addLines(long n) {
+		metrics.getLines().mark(n);
+		job.addLines(n);
+	}
+	
+	/**
+	 * Count (uncompressed) bytes of files processed
+	 * 
+	 * @param n number of bytes
+	 */
+	public void addBytes(long n) {
+		metrics.getBytes().mark(n);
+		job.addBytes(n);
+	}
+	
+	/**
+	 * Replace a snapshot by a new one, after the next commit
+	 * 
+	 * @param snapshot new snapshot
+	 * @param target previous snapshot
+	 */
+	public void addSnapshot(Path snapshot, Path target) {
+		snapshots.put(snapshot, target);
+	}
+	
+	/**
+	 * Commit the transaction and replace the snapshots of the files committed
+	 * 
+	 * @throws IOException 
+	 */
+	public void commit() throws IOException {
+		try (Timer.Context t = metrics.getCommit().time()) {
+			con.commit();
+		}
+		for (Map.Entry<Path,Path> e: snapshots.entrySet()) {
+			Files.move(e.getKey(), e.getValue(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		snapshots.clear();
+	}
+	
+	/**
+	 * Commit the transaction, save the number of items processed so far and
+	 * start a new transaction
+	 * 
+	 * @param name name of the entry being processed
+	 * @param count number of statements or lines
+	 * @throws IOException 
+	 */
+	public void commitChunk(String name, long count) throws IOException {
+		commit();
+		cp.save(name, count);
+		LOG.info("Committed {} of {}", count, name);
+		job.progress();
+		con.begin();
+	}
+	
+	/**
+	 * Commit the transaction after an entry has been processed completely
+	 * (only when using checkpoints) and start a new transaction
+	 * 
+	 * @param name name of the entry
+	 * @throws IOException 
+	 */
+	public void commitEntry(String name) throws IOException {
+		if (cp != null) {
+			commit();
+			cp.done(name);
+			con.begin();
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param con repository connection
+	 * @param zip zip file or null
+	 * @param chunkSize number of statements or lines per commit
+	 * @param cp checkpoint or null
+	 * @param metrics metrics of the repository
+	 * @param job status of the job
+	 */
+	public LoadContext(RepositoryConnection con, ZipFile zip, long chunkSize, 
+							Checkpoint cp, RepoMetrics metrics, JobStatus job) {
+		this.con = con;
+		this.zip = zip;
+		this.chunkSize = chunkSize;
+		this.cp = cp;
+		this.metrics = metrics;
+		this.job = job;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.StorageConfig;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.repository.Repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Life-cycle management and selection of the backend per repository.
+ * 
+ * Repositories use the remote (HTTP) backend, unless configured otherwise.
+ * 
+ * @author Bart.Hanssens
+ */
+public class ManagedBackend implements LoadBackend, Managed {
+	private final static Logger LOG = LoggerFactory.getLogger(ManagedBackend.class);
+	
+	private final LoadBackend remote;
+	private final LoadBackend local;
+	private final Map<String,LoadBackend> backends = new HashMap<>();
+	
+	@Override
+	public Set<String> getRepositoryNames() {
+		Set<String> names = new LinkedHashSet<>(remote.getRepositoryNames());
+		names.addAll(local.getRepositoryNames());
+		return names;
+	}
+	
+	@Override
+	public Repository getRepository(String name) {
+		return backends.getOrDefault(name, remote).getRepository(name);
+	}
+	
+	@Override
+	public void shutDown() {
+		local.shutDown();
+		remote.shutDown();
+	}
+
+	@Override
+	public void start() throws Exception {
+	}
+
+	@Override
+	public void stop() throws Exception {
+		shutDown();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param remote remote backend
+	 * @param cfg storage configuration
+	 */
+	public ManagedBackend(LoadBackend remote, StorageConfig cfg) {
+		this.remote = remote;
+		
+		Map<String,File> dirs = new HashMap<>();
+		cfg.getBackends().forEach((name, type) -> {
+			if (type == Type.NATIVE) {
+				File dir = (cfg.getNativeRoot() != null) 
+						? Paths.get(cfg.getNativeRoot(), name).toFile()
+						: Paths.get(cfg.getProcessRoot(), name, FileUtil.DIR_NATIVE).toFile();
+				LOG.info("Loading {} into native store {}", name, dir);
+				dirs.put(name, dir);
+			}
+		});
+		this.local = new NativeBackend(dirs);
+		dirs.keySet().forEach(name -> backends.put(name, local));
+	}
+}
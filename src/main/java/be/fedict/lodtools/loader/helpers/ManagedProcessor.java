@@ -25,44 +25,131 @@
  */
 package be.fedict.lodtools.loader.helpers;
 
+import be.fedict.lodtools.loader.StorageConfig;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
 import io.dropwizard.lifecycle.Managed;
 
-import java.util.concurrent.ExecutorService;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import org.eclipse.rdf4j.repository.manager.RepositoryManager;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Life-cycle management of the processing of uploaded files
+ * 
  * @author Bart.Hanssens
  */
 public class ManagedProcessor implements Managed {
 	private final static Logger LOG = LoggerFactory.getLogger(ManagedProcessor.class);
 	
-	private final RepositoryManager mgr;
-	private final String rootdir;
+	private final LoadBackend backend;
+	private final StorageConfig cfg;
+	private final MetricRegistry metrics;
+	private final LaneScheduler lanes;
+	private final DirProcessor processor;
+	private final JobIndex index;
+	private final JobQueue queue;
 	
-	private final ExecutorService exec = Executors.newSingleThreadExecutor();
+	private final ScheduledExecutorService exec = 
+									Executors.newSingleThreadScheduledExecutor();
 
+	/**
+	 * Get the names of the repositories that have a processing directory
+	 * 
+	 * @return list of names
+	 */
+	private List<String> getRepoNames() {
+		List<String> names = new ArrayList<>();
+		
+		for (String name: backend.getRepositoryNames()) {
+			File f = Paths.get(cfg.getProcessRoot(), name).toFile();
+			if (f.exists() && f.isDirectory()) {
+				names.add(name);
+			} else {
+				LOG.warn("Skipping {}, not a readable directory", name);
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Get the file processor
+	 * 
+	 * @return processor
+	 */
+	public DirProcessor getProcessor() {
+		return processor;
+	}
+	
+	/**
+	 * Get the index of job status
+	 * 
+	 * @return index
+	 */
+	public JobIndex getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Get the job queue
+	 * 
+	 * @return job queue
+	 */
+	public JobQueue getQueue() {
+		return queue;
+	}
 	
 	@Override
 	public void start() throws Exception {
-		DirProcessor processor = new DirProcessor(this.mgr, this.rootdir);
-		exec.submit(processor);
+		List<String> names = getRepoNames();
+		for (String name: names) {
+			metrics.register(MetricRegistry.name(ManagedProcessor.class, name, "queued"),
+							(Gauge<Integer>) () -> lanes.getQueueDepth(name));
+		}
+		index.load(cfg.getProcessRoot(), names);
+		queue.recover(names);
+		
+		// safety net for files copied directly into the upload directories
+		long interval = cfg.getScanInterval();
+		if (interval > 0) {
+			exec.scheduleWithFixedDelay(() -> queue.scan(names), 
+									interval, interval, TimeUnit.SECONDS);
+		}
 	}
 
 	@Override
 	public void stop() throws Exception {
-		exec.awaitTermination(1, TimeUnit.MINUTES);
+		exec.shutdownNow();
+		lanes.shutdown(1, TimeUnit.MINUTES);
+		queue.close();
+		processor.close();
 	}
 
-	
-	public ManagedProcessor(RepositoryManager mgr, String rootdir) {
-		this.mgr = mgr;
-		this.rootdir = rootdir;
+	/**
+	 * Constructor
+	 * 
+	 * @param backend backend to load data into
+	 * @param cfg storage configuration
+	 * @param metrics metrics registry
+	 */
+	public ManagedProcessor(LoadBackend backend, StorageConfig cfg, 
+												MetricRegistry metrics) {
+		this.backend = backend;
+		this.cfg = cfg;
+		this.metrics = metrics;
+		this.lanes = new LaneScheduler(cfg.getMaxConcurrent(), cfg.getMaxConcurrentBulk());
+		this.processor = new DirProcessor(backend, cfg, metrics);
+		this.index = new JobIndex(cfg.getMaxJobs());
+		this.queue = new JobQueue(cfg.getProcessRoot(), lanes, processor, index, 
+												metrics, cfg.getMaxQueuedBulk());
 	}
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local RDF4J native stores, written directly without HTTP.
+ * 
+ * Useful for (offline) bulk loading: the data directory can be copied 
+ * to an RDF4J server afterwards.
+ * 
+ * @author Bart.Hanssens
+ */
+public class NativeBackend implements LoadBackend {
+	private final static Logger LOG = LoggerFactory.getLogger(NativeBackend.class);
+	
+	private final Set<String> names;
+	private final Map<String,File> dirs;
+	private final Map<String,Repository> repos = new ConcurrentHashMap<>();
+	
+	@Override
+	public Set<String> getRepositoryNames() {
+		return names;
+	}
+
+	@Override
+	public Repository getRepository(String name) {
+		File dir = dirs.get(name);
+		if (dir == null) {
+			return null;
+		}
+		return repos.computeIfAbsent(name, n -> {
+			LOG.info("Opening native store {} in {}", n, dir);
+			Repository repo = new SailRepository(new NativeStore(dir));
+			repo.initialize();
+			return repo;
+		});
+	}
+
+	@Override
+	public void shutDown() {
+		repos.values().forEach(r -> r.shutDown());
+		repos.clear();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param dirs data directory per repository name
+	 */
+	public NativeBackend(Map<String,File> dirs) {
+		this.dirs = dirs;
+		this.names = Collections.unmodifiableSet(new LinkedHashSet<>(dirs.keySet()));
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.AbstractValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse line-based RDF formats (N-Triples, N-Quads) in parallel.
+ * 
+ * A reader thread splits the input into chunks of lines, which are parsed
+ * on a fork-join pool. The parsed chunks are passed, in their original order,
+ * through a bounded queue to the handler on the calling thread, 
+ * so only one thread uses the repository connection.
+ * 
+ * @author Bart.Hanssens
+ */
+public class ParallelParser {
+	private final static Logger LOG = LoggerFactory.getLogger(ParallelParser.class);
+	
+	private final static int CHUNK_LINES = 10_000;
+	private final static Future<List<Statement>> EOF = 
+									CompletableFuture.completedFuture(null);
+	
+	private final ForkJoinPool pool;
+	private final int queueSize;
+	private final ValueFactory vf;
+	
+	/**
+	 * Value factory using the same blank node for the same label, 
+	 * regardless of the chunk it was found in.
+	 * IRIs and literals are created by the shared value factory.
+	 */
+	private static class BNodeFactory extends AbstractValueFactory {
+		private final String prefix = "genid-" + UUID.randomUUID() + "-";
+		private final ValueFactory vf;
+		
+		@Override
+		public BNode createBNode(String id) {
+			return super.createBNode(prefix + id);
+		}
+
+		@Override
+		public IRI createIRI(String iri) {
+			return vf.createIRI(iri);
+		}
+
+		@Override
+		public IRI createIRI(String namespace, String localName) {
+			return vf.createIRI(namespace, localName);
+		}
+
+		@Override
+		public Literal createLiteral(String label) {
+			return vf.createLiteral(label);
+		}
+
+		@Override
+		public Literal createLiteral(String label, String language) {
+			return vf.createLiteral(label, language);
+		}
+
+		@Override
+		public Literal createLiteral(String label, IRI datatype) {
+			return vf.createLiteral(label, datatype);
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param vf value factory for IRIs and literals
+		 */
+		public BNodeFactory(ValueFactory vf) {
+			this.vf = vf;
+		}
+	}
+	
+	/**
+	 * Parse one chunk of lines
+	 * 
+	 * @param chunk lines
+	 * @param start line number of the first line
+	 * @param format RDF format
+	 * @param vf value factory
+	 * @return list of statements
+	 * @throws IOException
+	 */
+	private List<Statement> parseChunk(String chunk, long start, RDFFormat format,
+										ValueFactory vf) throws IOException {
+		List<Statement> stmts = new ArrayList<>(CHUNK_LINES);
+		
+		RDFParser parser = Rio.createParser(format, vf);
+		parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+		parser.setRDFHandler(new StatementCollector(stmts));
+		try {
+			parser.parse(new StringReader(chunk), "");
+		} catch (RDFParseException ex) {
+			// report line number in the entire file, not in the chunk
+			String msg = ex.getMessage();
+			String loc = RDFParseException.getLocationString(ex.getLineNumber(), 
+														ex.getColumnNumber());
+			if (msg.endsWith(loc)) {
+				msg = msg.substring(0, msg.length() - loc.length());
+			}
+			throw new RDFParseException(msg, ex, 
+						ex.getLineNumber() + start - 1, ex.getColumnNumber());
+		}
+		return stmts;
+	}
+	
+	/**
+	 * Put a chunk on the queue, unless processing has been stopped
+	 * 
+	 * @param queue queue
+	 * @param f future
+	 * @param stop stop flag
+	 * @return false when stopped
+	 * @throws InterruptedException 
+	 */
+	private boolean put(BlockingQueue<Future<List<Statement>>> queue, 
+					Future<List<Statement>> f, AtomicBoolean stop) throws InterruptedException {
+		while (!queue.offer(f, 100, TimeUnit.MILLISECONDS)) {
+			if (stop.get()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Read the input, split it in chunks and submit them for parsing
+	 * 
+	 * @param is input stream
+	 * @param queue queue of parsed chunks
+	 * @param format RDF format
+	 * @param vf value factory
+	 * @param stop stop flag
+	 */
+	private void read(InputStream is, BlockingQueue<Future<List<Statement>>> queue,
+						RDFFormat format, ValueFactory vf, AtomicBoolean stop) {
+		try {
+			BufferedReader r = new BufferedReader(
+								new InputStreamReader(is, StandardCharsets.UTF_8));
+			StringBuilder buf = new StringBuilder();
+			long lines = 0;
+			long start = 1;
+			
+			String line;
+			while ((line = r.readLine()) != null) {
+				buf.append(line).append('\n');
+				if (++lines % CHUNK_LINES == 0) {
+					String chunk = buf.toString();
+					long s = start;
+					if (!put(queue, pool.submit(() -> parseChunk(chunk, s, format, vf)), stop)) {
+						return;
+					}
+					buf.setLength(0);
+					start = lines + 1;
+				}
+			}
+			if (buf.length() > 0) {
+				String chunk = buf.toString();
+				long s = start;
+				if (!put(queue, pool.submit(() -> parseChunk(chunk, s, format, vf)), stop)) {
+					return;
+				}
+			}
+			put(queue, EOF, stop);
+		} catch (IOException|InterruptedException ex) {
+			CompletableFuture<List<Statement>> err = new CompletableFuture<>();
+			err.completeExceptionally(ex);
+			try {
+				put(queue, err, stop);
+			} catch (InterruptedException ie) {
+				LOG.error("Interrupted while reading");
+			}
+		}
+	}
+	
+	/**
+	 * Check if a format can be parsed in parallel
+	 * 
+	 * @param format RDF format
+	 * @return true if format is line-based
+	 */
+	public static boolean supports(RDFFormat format) {
+		return format.equals(RDFFormat.NTRIPLES) || format.equals(RDFFormat.NQUADS);
+	}
+	
+	/**
+	 * Parse N-Triples or N-Quads and pass the statements to a handler
+	 * 
+	 * @param is input stream
+	 * @param format RDF format
+	 * @param handler RDF handler
+	 * @throws IOException
+	 * @throws RDFParseException
+	 * @throws RDFHandlerException 
+	 */
+	public void parse(InputStream is, RDFFormat format, RDFHandler handler) 
+						throws IOException, RDFParseException, RDFHandlerException {
+		BlockingQueue<Future<List<Statement>>> queue = new ArrayBlockingQueue<>(queueSize);
+		AtomicBoolean stop = new AtomicBoolean(false);
+		ValueFactory vf = new BNodeFactory(this.vf);
+
+		Thread reader = new Thread(() -> read(is, queue, format, vf, stop), "nt-reader");
+		reader.setDaemon(true);
+		reader.start();
+		
+		try {
+			handler.startRDF();
+			Future<List<Statement>> f = queue.take();
+			while (f != EOF) {
+				for (Statement st: f.get()) {
+					handler.handleStatement(st);
+				}
+				f = queue.take();
+			}
+			handler.endRDF();
+		} catch (InterruptedException ex) {
+			throw new IOException("Interrupted while parsing", ex);
+		} catch (ExecutionException ex) {
+			Throwable t = ex.getCause();
+			// the fork-join pool may rethrow a copy, without the line number
+			if (t instanceof RDFParseException && t.getCause() instanceof RDFParseException
+					&& ((RDFParseException) t).getLineNumber() < 0) {
+				t = t.getCause();
+			}
+			if (t instanceof RDFParseException) {
+				throw (RDFParseException) t;
+			}
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			}
+			throw new IOException(t);
+		} finally {
+			stop.set(true);
+			queue.clear();
+			try {
+				reader.join();
+			} catch (InterruptedException ex) {
+				LOG.error("Interrupted while waiting for reader");
+			}
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param threads number of parser threads
+	 * @param vf value factory for IRIs and literals
+	 */
+	public ParallelParser(int threads, ValueFactory vf) {
+		this.pool = new ForkJoinPool(threads);
+		this.queueSize = threads * 2;
+		this.vf = vf;
+	}
+}
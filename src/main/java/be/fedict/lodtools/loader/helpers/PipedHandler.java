@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pass statements in batches, through a bounded queue, to a handler running
+ * on a separate writer thread.
+ * 
+ * This allows parsing and sending statements to the repository at the same
+ * time, while the parser is slowed down when the repository can't keep up.
+ * Only the writer thread uses the handler (and its repository connection).
+ * 
+ * @author Bart.Hanssens
+ */
+public class PipedHandler extends AbstractRDFHandler implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(PipedHandler.class);
+	
+	private final static int BATCH = 1_000;
+	private final static List<Statement> EOF = Collections.emptyList();
+
+	private final RDFHandler handler;
+	private final BlockingQueue<List<Statement>> queue;
+
+	private List<Statement> batch = new ArrayList<>(BATCH);
+	private Thread writer;
+	private volatile boolean stop = false;
+	private volatile RDFHandlerException error = null;
+	
+	/**
+	 * Take batches from the queue and pass them to the handler
+	 */
+	private void write() {
+		try {
+			handler.startRDF();
+			List<Statement> stmts = take();
+			while (stmts != EOF) {
+				for (Statement st: stmts) {
+					handler.handleStatement(st);
+				}
+				stmts = take();
+			}
+			handler.endRDF();
+		} catch (RDFHandlerException ex) {
+			error = ex;
+		} catch (RuntimeException ex) {
+			error = new RDFHandlerException(ex);
+		} catch (InterruptedException ex) {
+			LOG.info("Writer stopped");
+		} finally {
+			// let the parser fail fast
+			stop = true;
+		}
+	}
+	
+	/**
+	 * Take a batch from the queue, waiting until one is available
+	 * 
+	 * @return batch of statements or EOF
+	 * @throws InterruptedException when stopped
+	 */
+	private List<Statement> take() throws InterruptedException {
+		List<Statement> stmts;
+		while ((stmts = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+			if (stop) {
+				throw new InterruptedException("Stopped");
+			}
+		}
+		return stmts;
+	}
+	
+	/**
+	 * Put a batch on the queue, waiting while the queue is full
+	 * 
+	 * @param stmts batch of statements or EOF
+	 * @throws RDFHandlerException when the writer failed
+	 */
+	private void put(List<Statement> stmts) throws RDFHandlerException {
+		boolean queued;
+		try {
+			while (!(queued = queue.offer(stmts, 100, TimeUnit.MILLISECONDS)) && !stop) {
+				// wait for the writer
+			}
+		} catch (InterruptedException ex) {
+			throw new RDFHandlerException("Interrupted while queueing", ex);
+		}
+		if (error != null) {
+			throw error;
+		}
+		if (!queued) {
+			throw new RDFHandlerException("Writer stopped");
+		}
+	}
+	
+	@Override
+	public void startRDF() throws RDFHandlerException {
+		writer = new Thread(this::write, "rdf-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		batch.add(st);
+		if (batch.size() == BATCH) {
+			put(batch);
+			batch = new ArrayList<>(BATCH);
+		}
+	}
+	
+	@Override
+	public void endRDF() throws RDFHandlerException {
+		if (!batch.isEmpty()) {
+			put(batch);
+		}
+		put(EOF);
+		try {
+			writer.join();
+		} catch (InterruptedException ex) {
+			throw new RDFHandlerException("Interrupted while writing", ex);
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+	
+	/**
+	 * Stop the writer thread, e.g. when parsing failed
+	 */
+	@Override
+	public void close() {
+		stop = true;
+		if (writer != null) {
+			try {
+				writer.join();
+			} catch (InterruptedException ex) {
+				LOG.error("Interrupted while waiting for writer");
+			}
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param handler handler to be used on the writer thread
+	 * @param queueSize maximum number of batches waiting to be written
+	 */
+	public PipedHandler(RDFHandler handler, int queueSize) {
+		this.handler = handler;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+	}
+}
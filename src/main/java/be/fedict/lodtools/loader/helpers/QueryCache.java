@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the query files in the query directories, so they are not read 
+ * again for every CSV file.
+ * 
+ * Queries are cached by path, and removed when the directory watcher notices
+ * a change. Only when a directory cannot be watched, the modification time 
+ * of the file is checked every time.
+ * 
+ * @author Bart.Hanssens
+ */
+public class QueryCache implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(QueryCache.class);
+	
+	private final Map<Path,Query> cache = new ConcurrentHashMap<>();
+	private final Set<Path> watched = ConcurrentHashMap.newKeySet();
+	private final WatchService watcher;
+	
+	/**
+	 * Query and the modification time of the file
+	 */
+	private static class Query {
+		private final long modified;
+		private final String text;
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param modified modification time
+		 * @param text query
+		 */
+		public Query(long modified, String text) {
+			this.modified = modified;
+			this.text = text;
+		}
+	}
+	
+	/**
+	 * Start watching a directory for changes, if not already watched
+	 * 
+	 * @param dir directory
+	 * @return true if the directory is watched
+	 */
+	private boolean watch(Path dir) {
+		if (watcher == null) {
+			return false;
+		}
+		if (watched.contains(dir)) {
+			return true;
+		}
+		synchronized (watched) {
+			if (!watched.contains(dir)) {
+				try {
+					dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, 
+										StandardWatchEventKinds.ENTRY_MODIFY,
+										StandardWatchEventKinds.ENTRY_DELETE);
+					watched.add(dir);
+					// may have been cached before without watching
+					cache.keySet().removeIf(p -> dir.equals(p.getParent()));
+					LOG.info("Watching query directory {}", dir);
+				} catch (IOException ex) {
+					LOG.warn("Could not watch {}: {}", dir, ex.getMessage());
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Remove changed query files from the cache
+	 */
+	private void invalidate() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event: key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						cache.clear();
+					} else {
+						Path p = dir.resolve((Path) event.context());
+						if (cache.remove(p) != null) {
+							LOG.info("Query file {} changed", p);
+						}
+					}
+				}
+				if (!key.reset()) {
+					watched.remove(dir);
+					cache.keySet().removeIf(p -> dir.equals(p.getParent()));
+				}
+			}
+		} catch (InterruptedException|ClosedWatchServiceException ex) {
+			LOG.info("Stopped watching query directories");
+		}
+	}
+	
+	/**
+	 * Read a query file
+	 * 
+	 * @param p path to the query file
+	 * @param modified modification time
+	 * @return query
+	 * @throws UncheckedIOException
+	 */
+	private static Query read(Path p, long modified) {
+		try {
+			return new Query(modified, 
+						new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	/**
+	 * Get the query from a query file
+	 * 
+	 * @param f query file
+	 * @return query
+	 * @throws IOException 
+	 */
+	public String get(File f) throws IOException {
+		Path p = f.toPath().toAbsolutePath();
+		
+		try {
+			if (watch(p.getParent())) {
+				// a change removes the file from the cache, even while reading
+				return cache.computeIfAbsent(p, k -> read(k, 0)).text;
+			}
+			long modified = Files.getLastModifiedTime(p).toMillis();
+			Query q = cache.get(p);
+			if (q == null || q.modified != modified) {
+				q = read(p, modified);
+				cache.put(p, q);
+			}
+			return q.text;
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+		}
+	}
+	
+	/**
+	 * Constructor
+	 */
+	public QueryCache() {
+		WatchService w = null;
+		try {
+			w = FileSystems.getDefault().newWatchService();
+		} catch (IOException ex) {
+			LOG.warn("Not watching query directories: {}", ex.getMessage());
+		}
+		this.watcher = w;
+		
+		if (watcher != null) {
+			Thread t = new Thread(this::invalidate, "query-watcher");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+}
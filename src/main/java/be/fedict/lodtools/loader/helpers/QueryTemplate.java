@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+/**
+ * SPARQL update with variables to be filled in as text.
+ * 
+ * The update is split on the variables, skipping IRIs, string literals and
+ * comments, so a variable name inside e.g. an IRI is never replaced.
+ * Values are checked before they are filled in, since one invalid IRI or
+ * language tag would break (or change) the entire update.
+ * 
+ * @author Bart.Hanssens
+ */
+public class QueryTemplate {
+	private final static Pattern LANG = Pattern.compile("[a-zA-Z]+(-[a-zA-Z0-9]+)*");
+	
+	private final List<String> parts = new ArrayList<>();
+	private final List<Integer> vars = new ArrayList<>();
+	
+	/**
+	 * Find the end of an IRI
+	 * 
+	 * @param qry query
+	 * @param i position of the opening angle bracket
+	 * @return position of the closing angle bracket, or -1 when it is not an IRI
+	 *			(e.g. a less than operator)
+	 */
+	private static int iriEnd(String qry, int i) {
+		for (int j = i + 1; j < qry.length(); j++) {
+			char c = qry.charAt(j);
+			if (c == '>') {
+				return j;
+			}
+			if (c <= ' ' || "<\"{}|^`\\".indexOf(c) >= 0) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Find the end of a string literal, with single or triple quotes
+	 * 
+	 * @param qry query
+	 * @param i position of the opening quote
+	 * @return position after the closing quote
+	 */
+	private static int stringEnd(String qry, int i) {
+		char q = qry.charAt(i);
+		boolean triple = qry.startsWith(new String(new char[] { q, q, q }), i);
+		int j = triple ? i + 3 : i + 1;
+		while (j < qry.length()) {
+			char c = qry.charAt(j);
+			if (c == '\\') {
+				j += 2;
+			} else if (c == q && (!triple || qry.startsWith(
+								new String(new char[] { q, q, q }), j))) {
+				return triple ? j + 3 : j + 1;
+			} else {
+				j++;
+			}
+		}
+		return qry.length();
+	}
+	
+	/**
+	 * Find the end of a variable name
+	 * 
+	 * @param qry query
+	 * @param i position of the ? or $
+	 * @return position after the name
+	 */
+	private static int nameEnd(String qry, int i) {
+		int j = i + 1;
+		while (j < qry.length() && 
+				(Character.isLetterOrDigit(qry.charAt(j)) || qry.charAt(j) == '_')) {
+			j++;
+		}
+		return j;
+	}
+	
+	/**
+	 * Check that an IRI can be written in a SPARQL update as-is
+	 * 
+	 * @param iri IRI
+	 * @return IRI between angle brackets
+	 * @throws IllegalArgumentException when the IRI contains invalid characters
+	 */
+	private static String toTerm(IRI iri) {
+		String s = iri.stringValue();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c <= ' ' || "<>\"{}|^`\\".indexOf(c) >= 0) {
+				throw new IllegalArgumentException("Invalid character in IRI " + s);
+			}
+		}
+		return NTriplesUtil.toNTriplesString(iri);
+	}
+	
+	/**
+	 * Convert a value to a SPARQL term, escaping the label of a literal
+	 * 
+	 * @param val IRI or literal
+	 * @return SPARQL term
+	 * @throws IllegalArgumentException when the value cannot be written safely
+	 */
+	public static String toTerm(Value val) {
+		if (val instanceof IRI) {
+			return toTerm((IRI) val);
+		}
+		if (!(val instanceof Literal)) {
+			throw new IllegalArgumentException("Not an IRI or literal " + val);
+		}
+		Literal lit = (Literal) val;
+		String lang = lit.getLanguage().orElse(null);
+		if (lang != null) {
+			if (!LANG.matcher(lang).matches()) {
+				throw new IllegalArgumentException("Invalid language tag " + lang);
+			}
+		} else {
+			toTerm(lit.getDatatype());
+		}
+		return NTriplesUtil.toNTriplesString(lit);
+	}
+	
+	/**
+	 * Fill in the values, appending the update to a buffer
+	 * 
+	 * @param buf buffer
+	 * @param vals values (as SPARQL terms), in the order of the variables
+	 */
+	public void fill(StringBuilder buf, String[] vals) {
+		buf.append(parts.get(0));
+		for (int i = 1; i < parts.size(); i++) {
+			buf.append(vals[vars.get(i - 1)]).append(parts.get(i));
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param qry SPARQL update
+	 * @param names variable names
+	 */
+	public QueryTemplate(String qry, String[] names) {
+		List<String> list = Arrays.asList(names);
+		int start = 0;
+		int i = 0;
+		
+		while (i < qry.length()) {
+			char c = qry.charAt(i);
+			if (c == '#') {
+				int eol = qry.indexOf('\n', i);
+				i = (eol < 0) ? qry.length() : eol;
+			} else if (c == '"' || c == '\'') {
+				i = stringEnd(qry, i);
+			} else if (c == '<') {
+				int end = iriEnd(qry, i);
+				i = (end < 0) ? i + 1 : end + 1;
+			} else if (c == '?' || c == '$') {
+				int end = nameEnd(qry, i);
+				int idx = list.indexOf(qry.substring(i + 1, end));
+				if (idx >= 0) {
+					parts.add(qry.substring(start, i));
+					vars.add(idx);
+					start = end;
+				}
+				i = Math.max(end, i + 1);
+			} else {
+				i++;
+			}
+		}
+		parts.add(qry.substring(start));
+	}
+}
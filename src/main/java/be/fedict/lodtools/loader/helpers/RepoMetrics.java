@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Metrics of the loading process of one repository
+ * 
+ * @author Bart.Hanssens
+ */
+public class RepoMetrics {
+	private final Meter bytes;
+	private final Meter statements;
+	private final Meter lines;
+	private final Meter updates;
+	private final Meter failures;
+	private final Timer load;
+	private final Timer commit;
+
+	/**
+	 * Get meter for the number of bytes read from zip entries
+	 * 
+	 * @return meter
+	 */
+	public Meter getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Get meter for the number of statements parsed by the loader
+	 * 
+	 * @return meter
+	 */
+	public Meter getStatements() {
+		return statements;
+	}
+
+	/**
+	 * Get meter for the number of CSV lines
+	 * 
+	 * @return meter
+	 */
+	public Meter getLines() {
+		return lines;
+	}
+
+	/**
+	 * Get meter for the number of SPARQL update requests
+	 * 
+	 * @return meter
+	 */
+	public Meter getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Get meter for the number of failed uploads
+	 * 
+	 * @return meter
+	 */
+	public Meter getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Get timer for processing an entire zip file
+	 * 
+	 * @return timer
+	 */
+	public Timer getLoad() {
+		return load;
+	}
+
+	/**
+	 * Get timer for commits
+	 * 
+	 * @return timer
+	 */
+	public Timer getCommit() {
+		return commit;
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param registry metrics registry
+	 * @param repo repository name
+	 */
+	public RepoMetrics(MetricRegistry registry, String repo) {
+		this.bytes = registry.meter(MetricRegistry.name(DirProcessor.class, repo, "bytes"));
+		this.statements = registry.meter(MetricRegistry.name(DirProcessor.class, repo, "statements"));
+		this.lines = registry.meter(MetricRegistry.name(DirProcessor.class, repo, "lines"));
+		this.updates = registry.meter(MetricRegistry.name(DirProcessor.class, repo, "updates"));
+		this.failures = registry.meter(MetricRegistry.name(DirProcessor.class, repo, "failures"));
+		this.load = registry.timer(MetricRegistry.name(DirProcessor.class, repo, "load"));
+		this.commit = registry.timer(MetricRegistry.name(DirProcessor.class, repo, "commit"));
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit the number of uploads being received at the same time, 
+ * and the number of bytes per second uploaded to each repository.
+ * 
+ * Uploads are read on a separate pool of threads, so slow clients do not
+ * block the threads of the web server.
+ * 
+ * @author Bart.Hanssens
+ */
+public class UploadLimiter implements Managed {
+	private final Semaphore slots;
+	private final ExecutorService exec;
+	private final long rate;
+	private final Map<String,Quota> quotas = new ConcurrentHashMap<>();
+	
+	/**
+	 * Token bucket of bytes for one repository, allowing bursts of one second
+	 */
+	private static class Quota {
+		private final long rate;
+		private double available;
+		private long last = System.nanoTime();
+		
+		/**
+		 * Add the bytes allowed since the last call
+		 */
+		private void refill() {
+			long now = System.nanoTime();
+			available = Math.min(rate, available + (now - last) * rate / 1e9);
+			last = now;
+		}
+		
+		/**
+		 * Take a number of bytes from the bucket
+		 * 
+		 * @param bytes number of bytes
+		 * @return nanoseconds to wait before the bucket is no longer empty
+		 */
+		private synchronized long take(long bytes) {
+			refill();
+			available -= bytes;
+			return getWait();
+		}
+		
+		/**
+		 * Get the time to wait before the bucket is no longer empty
+		 * 
+		 * @return nanoseconds
+		 */
+		private synchronized long getWait() {
+			refill();
+			return (available < 0) ? (long) (-available * 1e9 / rate) : 0;
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param rate bytes per second
+		 */
+		public Quota(long rate) {
+			this.rate = rate;
+			this.available = rate;
+		}
+	}
+	
+	/**
+	 * Input stream slowing down the reading when the quota is exceeded
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		private final Quota quota;
+		
+		/**
+		 * Wait when too many bytes have been read
+		 * 
+		 * @param bytes bytes read
+		 * @throws IOException 
+		 */
+		private void take(long bytes) throws IOException {
+			if (bytes <= 0) {
+				return;
+			}
+			long wait = quota.take(bytes);
+			if (wait > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				} catch (InterruptedException ex) {
+					throw new InterruptedIOException("Interrupted while throttling");
+				}
+			}
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			take((b >= 0) ? 1 : 0);
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			take(n);
+			return n;
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param is input stream
+		 * @param quota quota of the repository
+		 */
+		public LimitedInputStream(InputStream is, Quota quota) {
+			super(is);
+			this.quota = quota;
+		}
+	}
+	
+	/**
+	 * Get the number of seconds to wait before a repository accepts uploads 
+	 * again, because it exceeded its quota
+	 * 
+	 * @param repo repository name
+	 * @return seconds, 0 if uploads are accepted
+	 */
+	public long getRetryAfter(String repo) {
+		if (rate == 0) {
+			return 0;
+		}
+		Quota q = quotas.get(repo);
+		if (q == null) {
+			return 0;
+		}
+		long wait = q.getWait();
+		return (wait > 0) ? TimeUnit.NANOSECONDS.toSeconds(wait) + 1 : 0;
+	}
+	
+	/**
+	 * Limit the number of bytes per second read from an upload
+	 * 
+	 * @param repo repository name
+	 * @param is input stream of the upload
+	 * @return input stream
+	 */
+	public InputStream limit(String repo, InputStream is) {
+		if (rate == 0) {
+			return is;
+		}
+		return new LimitedInputStream(is, quotas.computeIfAbsent(repo, r -> new Quota(rate)));
+	}
+	
+	/**
+	 * Receive an upload on the upload pool, unless the maximum number of 
+	 * uploads is already being received.
+	 * 
+	 * @param task task reading the upload
+	 * @return false if no more uploads can be accepted
+	 */
+	public boolean execute(Runnable task) {
+		if (!slots.tryAcquire()) {
+			return false;
+		}
+		try {
+			exec.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					slots.release();
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			slots.release();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Take an upload slot for an upload that is read on another thread,
+	 * without using the upload pool
+	 * 
+	 * @return false if no more uploads can be accepted
+	 */
+	public boolean tryAcquire() {
+		return slots.tryAcquire();
+	}
+	
+	/**
+	 * Release an upload slot taken with tryAcquire
+	 */
+	public void release() {
+		slots.release();
+	}
+
+	@Override
+	public void start() throws Exception {
+	}
+
+	@Override
+	public void stop() throws Exception {
+		exec.shutdown();
+		exec.awaitTermination(1, TimeUnit.MINUTES);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param maxUploads maximum number of uploads at the same time
+	 * @param rate maximum number of bytes per second per repository, 0 = unlimited
+	 */
+	public UploadLimiter(int maxUploads, long rate) {
+		this.slots = new Semaphore(maxUploads);
+		this.exec = Executors.newFixedThreadPool(maxUploads);
+		this.rate = rate;
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validate the entries of a zip file in parallel, before anything is sent
+ * to the triple store.
+ * 
+ * RDF files are parsed and CSV files must have a query, the number of 
+ * statements and lines is counted.
+ * 
+ * @author Bart.Hanssens
+ */
+public class ZipValidator {
+	private final static Logger LOG = LoggerFactory.getLogger(ZipValidator.class);
+	
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Handler counting statements, stopping when another entry failed
+	 */
+	private static class Counter extends AbstractRDFHandler {
+		private final AtomicReference<Exception> error;
+		private long count = 0;
+		
+		@Override
+		public void handleStatement(Statement st) throws RDFHandlerException {
+			if (error.get() != null) {
+				throw new RDFHandlerException("Validation stopped");
+			}
+			count++;
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param error first error
+		 */
+		public Counter(AtomicReference<Exception> error) {
+			this.error = error;
+		}
+	}
+	
+	/**
+	 * Parse a (possibly compressed) RDF file and count the statements
+	 * 
+	 * @param zip zip file
+	 * @param entry RDF file
+	 * @param format RDF format
+	 * @param error first error
+	 * @return number of statements
+	 * @throws IOException 
+	 */
+	private long countStatements(ZipFile zip, ZipEntry entry, RDFFormat format, 
+							AtomicReference<Exception> error) throws IOException {
+		Counter counter = new Counter(error);
+		RDFParser parser = Rio.createParser(format);
+		parser.setRDFHandler(counter);
+		
+		try (InputStream is = FileUtil.decompress(entry.getName(), zip.getInputStream(entry))) {
+			parser.parse(is, "");
+		} catch (RDFParseException ex) {
+			// add name of the file, location is added again by the constructor
+			String msg = ex.getMessage();
+			String loc = RDFParseException.getLocationString(ex.getLineNumber(), 
+														ex.getColumnNumber());
+			if (msg.endsWith(loc)) {
+				msg = msg.substring(0, msg.length() - loc.length());
+			}
+			throw new RDFParseException(entry.getName() + ": " + msg, ex,
+									ex.getLineNumber(), ex.getColumnNumber());
+		}
+		return counter.count;
+	}
+	
+	/**
+	 * Check if there is a query for a (possibly compressed) CSV file and 
+	 * count the lines
+	 * 
+	 * @param zip zip file
+	 * @param entry CSV file
+	 * @param qryDir default query directory
+	 * @param error first error
+	 * @return number of lines
+	 * @throws IOException 
+	 */
+	private long countLines(ZipFile zip, ZipEntry entry, File qryDir, 
+							AtomicReference<Exception> error) throws IOException {
+		String csv = entry.getName();
+		if (zip.getEntry(FileUtil.getQueryName(csv)) == null 
+				&& !FileUtil.getQueryFile(qryDir, new File(csv)).exists()) {
+			throw new IOException("No query file for " + csv);
+		}
+		
+		long count = 0;
+		try (CsvReader r = new CsvReader(new InputStreamReader(
+					FileUtil.decompress(csv, zip.getInputStream(entry)), StandardCharsets.UTF_8))) {
+			// header row with variable names and empty lines are not counted
+			r.readHeader();
+			while (r.next() && error.get() == null) {
+				if (!r.isEmpty()) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Validate one entry
+	 * 
+	 * @param zip zip file
+	 * @param entry entry
+	 * @param qryDir default query directory
+	 * @param error first error, set when validation fails
+	 * @return number of statements or lines
+	 * @throws IOException 
+	 */
+	private long validate(ZipFile zip, ZipEntry entry, File qryDir, 
+							AtomicReference<Exception> error) throws IOException {
+		try {
+			String name = FileUtil.stripCompression(entry.getName());
+			if (name.endsWith(FileUtil.EXT_CSV)) {
+				return countLines(zip, entry, qryDir, error);
+			}
+			Optional<RDFFormat> format = FileUtil.getRDFFormat(name);
+			return format.isPresent() ? countStatements(zip, entry, format.get(), error) : 0;
+		} catch (IOException|RuntimeException ex) {
+			error.compareAndSet(null, ex);
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Check the names and (uncompressed) sizes of the entries of a zip file.
+	 * Absolute names or names with a parent directory are refused, 
+	 * since entry names are used for snapshot files.
+	 * 
+	 * @param entries entries
+	 * @param maxSize maximum size in bytes, 0 for unlimited
+	 * @throws IOException when an entry is refused
+	 */
+	public static void check(List<ZipEntry> entries, long maxSize) throws IOException {
+		for (ZipEntry e: entries) {
+			String name = e.getName();
+			if (name.startsWith("/") || name.startsWith("\\") 
+					|| name.matches("[A-Za-z]:.*")) {
+				throw new IOException("Absolute path not allowed: " + name);
+			}
+			for (String part: name.split("[/\\\\]")) {
+				if (part.equals("..")) {
+					throw new IOException("Parent directory not allowed: " + name);
+				}
+			}
+			if (maxSize > 0 && e.getSize() > maxSize) {
+				throw new IOException("Size of " + name + " exceeds " + maxSize + " bytes");
+			}
+		}
+	}
+	
+	/**
+	 * Validate the entries of a zip file, one thread per entry.
+	 * 
+	 * @param zip zip file
+	 * @param entries entries to be validated
+	 * @param qryDir default query directory
+	 * @return number of statements (RDF) or lines (CSV) per entry name
+	 * @throws IOException
+	 * @throws RDFParseException 
+	 */
+	public Map<String,Long> validate(ZipFile zip, List<ZipEntry> entries, File qryDir) 
+										throws IOException, RDFParseException {
+		AtomicReference<Exception> error = new AtomicReference<>();
+		List<Future<Long>> futures = new ArrayList<>(entries.size());
+		
+		for (ZipEntry e: entries) {
+			futures.add(pool.submit(() -> validate(zip, e, qryDir, error)));
+		}
+		
+		// wait for all threads, so none is still reading from the zip file
+		Map<String,Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < entries.size(); i++) {
+			try {
+				counts.put(entries.get(i).getName(), futures.get(i).get());
+			} catch (InterruptedException ex) {
+				error.compareAndSet(null, new IOException("Validation interrupted"));
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException ex) {
+				// first error is kept
+			}
+		}
+		
+		Exception ex = error.get();
+		if (ex instanceof IOException) {
+			throw (IOException) ex;
+		}
+		if (ex != null) {
+			throw (RuntimeException) ex;
+		}
+		LOG.info("Validated {} files", entries.size());
+		return counts;
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param threads number of validation threads
+	 */
+	public ZipValidator(int threads) {
+		this.pool = new ForkJoinPool(threads);
+	}
+}
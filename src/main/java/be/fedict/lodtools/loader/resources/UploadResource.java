@@ -25,70 +25,294 @@
  */
 package be.fedict.lodtools.loader.resources;
 
+import be.fedict.lodtools.loader.helpers.DirProcessor;
 import be.fedict.lodtools.loader.helpers.FileUtil;
+import be.fedict.lodtools.loader.helpers.JobEvents;
+import be.fedict.lodtools.loader.helpers.JobIndex;
+import be.fedict.lodtools.loader.helpers.JobQueue;
+import be.fedict.lodtools.loader.helpers.JobStatus;
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+import be.fedict.lodtools.loader.helpers.JobStatus.State;
+import be.fedict.lodtools.loader.helpers.UploadLimiter;
 import java.io.File;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import javax.annotation.security.PermitAll;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
+
 /**
  *
  * @author Bart.Hanssens
  */
 @Path("/_upload")
+@Produces(MediaType.APPLICATION_JSON)
 public class UploadResource {
-	private final static Map<String,Status> STATUS = new HashMap<>();
+	private final static Map<State,Status> STATUS = new EnumMap<>(State.class);
+	private final static int TOO_MANY_REQUESTS = 429;
+	private final static int RETRY_BUSY = 5;
+	private final static int RETRY_BULK = 60;
+	private final static long MAX_WAIT = 60;
+	
 	private final FileUtil util;
+	private final JobQueue queue;
+	private final UploadLimiter limiter;
+	private final JobIndex index;
+	private final JobEvents events;
 	
 	static {
-		STATUS.put(FileUtil.DIR_DONE, Status.OK);
-		STATUS.put(FileUtil.DIR_FAILED , Status.INTERNAL_SERVER_ERROR);
-		STATUS.put(FileUtil.DIR_PROCESS, Status.ACCEPTED);
+		STATUS.put(State.QUEUED, Status.ACCEPTED);
+		STATUS.put(State.PROCESSING, Status.ACCEPTED);
+		STATUS.put(State.DONE, Status.OK);
+		STATUS.put(State.FAILED, Status.INTERNAL_SERVER_ERROR);
+	}
+	
+	/**
+	 * Reject an upload when the repository exceeded its quota (429)
+	 * 
+	 * @param repo repository name
+	 * @param resp asynchronous response
+	 * @return true if rejected
+	 */
+	private boolean throttled(String repo, AsyncResponse resp) {
+		long wait = limiter.getRetryAfter(repo);
+		if (wait > 0) {
+			resp.resume(Response.status(TOO_MANY_REQUESTS)
+								.header(HttpHeaders.RETRY_AFTER, wait).build());
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Receive an upload on a separate thread, unless the repository exceeded
+	 * its quota (429) or too many uploads are being received (503)
+	 * 
+	 * @param repo repository name
+	 * @param resp asynchronous response
+	 * @param task task reading the upload, returning null when the response 
+	 *				will be resumed later
+	 * @return true if the task will be run
+	 */
+	private boolean receive(String repo, AsyncResponse resp, Supplier<Response> task) {
+		if (throttled(repo, resp)) {
+			return false;
+		}
+		boolean accepted = limiter.execute(() -> {
+			try {
+				Response r = task.get();
+				if (r != null) {
+					resp.resume(r);
+				}
+			} catch (RuntimeException ex) {
+				resp.resume(ex);
+			}
+		});
+		if (! accepted) {
+			resp.resume(Response.status(Status.SERVICE_UNAVAILABLE)
+								.header(HttpHeaders.RETRY_AFTER, RETRY_BUSY).build());
+		}
+		return accepted;
+	}
+	
+	/**
+	 * Get the priority of an upload, from the query parameter or the file name
+	 * 
+	 * @param param query parameter or null
+	 * @param name file name
+	 * @return priority or null if the parameter is not valid
+	 */
+	private static Priority getPriority(String param, String name) {
+		if (param == null) {
+			return FileUtil.getPriority(name);
+		}
+		try {
+			return Priority.valueOf(param.toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
 	}
 	
 	@PermitAll
 	@POST
 	@Path("/load/{repo}/{file}")
 	@Consumes("application/zip")
-	public Response upload(@PathParam("repo") String repo, 
-							@PathParam("file") String name, InputStream is) {
-		String p  = util.store(repo, is, name);
-		return (p != null) ? Response.accepted().build()
-							: Response.serverError().build();
+	public void upload(@PathParam("repo") String repo, 
+							@PathParam("file") String name, 
+							@QueryParam("priority") String param, InputStream is,
+							@Suspended AsyncResponse resp) {
+		Priority priority = getPriority(param, name);
+		if (priority == null) {
+			resp.resume(Response.status(Status.BAD_REQUEST).build());
+			return;
+		}
+		// reject bulk uploads early when too many jobs are waiting
+		if (! queue.admits(priority)) {
+			resp.resume(Response.status(Status.SERVICE_UNAVAILABLE)
+								.header(HttpHeaders.RETRY_AFTER, RETRY_BULK).build());
+			return;
+		}
+		// do not overwrite a file that is still waiting to be processed, 
+		// and make sure a scan does not pick it up before it is submitted
+		if (! queue.reserve(repo, name)) {
+			resp.resume(Response.status(Status.CONFLICT).build());
+			return;
+		}
+		boolean accepted = receive(repo, resp, () -> {
+			try {
+				String p  = util.store(repo, limiter.limit(repo, is), name);
+				if (p == null) {
+					return Response.serverError().build();
+				}
+				if (! queue.submit(repo, name, priority)) {
+					return Response.status(Status.CONFLICT).build();
+				}
+				return Response.accepted().build();
+			} catch (IOException ex) {
+				return Response.serverError().build();
+			} finally {
+				queue.release(repo, name);
+			}
+		});
+		if (! accepted) {
+			queue.release(repo, name);
+		}
 	}
 	
 	@PermitAll
-	@GET
-	@Path("/status/{repo}/{file}")
-	public Response status(@PathParam("repo") String repo, 
+	@POST
+	@Path("/stream/{repo}/{file}")
+	public void stream(@PathParam("repo") String repo, 
+							@PathParam("file") String name, InputStream is,
+							@Suspended AsyncResponse resp) {
+		if (! Files.isDirectory(Paths.get(util.getDir(), repo))) {
+			resp.resume(Response.status(Status.NOT_FOUND).build());
+			return;
+		}
+		if (! DirProcessor.supports(name)) {
+			resp.resume(Response.status(Status.UNSUPPORTED_MEDIA_TYPE).build());
+			return;
+		}
+		if (throttled(repo, resp)) {
+			return;
+		}
+		if (! limiter.tryAcquire()) {
+			resp.resume(Response.status(Status.SERVICE_UNAVAILABLE)
+								.header(HttpHeaders.RETRY_AFTER, RETRY_BUSY).build());
+			return;
+		}
+		// parsed directly from the request in the lane of the repository,
+		// so the upload slot is only released when the file is loaded
+		queue.stream(repo, name, limiter.limit(repo, is)).whenComplete((j, ex) -> {
+			limiter.release();
+			resp.resume((ex == null) ? toResponse(j) : ex);
+		});
+	}
+	
+	@PermitAll
+	@POST
+	@Path("/retry/{repo}/{file}")
+	public Response retry(@PathParam("repo") String repo, 
 							@PathParam("file") String file) {
 		File f = new File(file);
-		String root = util.getDir();
-		
-		for(String dir: STATUS.keySet()) {
-			if (FileUtil.getFile(root, repo, dir, f).exists()) {
-				return Response.status(STATUS.get(dir)).build();
-			}
+		if (! FileUtil.getFile(util.getDir(), repo, FileUtil.DIR_FAILED, f).exists()) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+		if (! util.retry(repo, f.getName())) {
+			return Response.serverError().build();
+		}
+		try {
+			queue.submit(repo, f.getName());
+		} catch (IOException ex) {
+			return Response.serverError().build();
+		}
+		return Response.accepted().build();
+	}
+	
+	/**
+	 * Get response with the HTTP status and the progress of a job
+	 * 
+	 * @param job job status
+	 * @return response
+	 */
+	private static Response toResponse(JobStatus job) {
+		return Response.status(STATUS.get(job.getState())).entity(job).build();
+	}
+	
+	@PermitAll
+	@GET
+	@Path("/status/{repo}/{file}")
+	public void status(@PathParam("repo") String repo, 
+							@PathParam("file") String file,
+							@QueryParam("wait") @DefaultValue("0") long wait,
+							@Suspended AsyncResponse resp) {
+		String name = new File(file).getName();
+		JobStatus job = index.get(repo, name);
+		if (job == null) {
+			resp.resume(Response.status(Status.NOT_FOUND).build());
+			return;
+		}
+		if (wait <= 0 || job.isCompleted()) {
+			resp.resume(toResponse(job));
+			return;
+		}
+		// long poll: wait until the job is completed or the time is up
+		resp.setTimeout(Math.min(wait, MAX_WAIT), TimeUnit.SECONDS);
+		resp.setTimeoutHandler(r -> r.resume(toResponse(job)));
+		index.whenCompleted(repo, name).thenAccept(j -> resp.resume(toResponse(j)));
+	}
+	
+	@PermitAll
+	@GET
+	@Path("/events/{repo}")
+	@Produces(SseFeature.SERVER_SENT_EVENTS)
+	public EventOutput events(@PathParam("repo") String repo) {
+		if (! Files.isDirectory(Paths.get(util.getDir(), repo))) {
+			throw new NotFoundException();
 		}
-		return Response.status(Status.NOT_FOUND).build();
+		return events.subscribe(repo);
 	}
 	
 	/**
 	 * Constructor
 	 * 
 	 * @param util 
+	 * @param queue job queue
+	 * @param limiter upload limiter
+	 * @param index index of job status
+	 * @param events status events
 	 */
-	public UploadResource(FileUtil util) {
+	public UploadResource(FileUtil util, JobQueue queue, UploadLimiter limiter, 
+										JobIndex index, JobEvents events) {
 		this.util = util;
+		this.queue = queue;
+		this.limiter = limiter;
+		this.index = index;
+		this.events = events;
 	}
 }
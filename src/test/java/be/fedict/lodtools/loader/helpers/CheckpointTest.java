@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for resuming the load of a zip file
+ * 
+ * @author Bart.Hanssens
+ */
+public class CheckpointTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	@Test
+	public void testResume() throws IOException {
+		Path file = tmp.getRoot().toPath().resolve("data.zip.checkpoint");
+		Checkpoint cp = new Checkpoint(file, "abc");
+		cp.done("a.nt");
+		cp.save("b.nt", 1000);
+		
+		cp = new Checkpoint(file, "abc");
+		assertTrue(cp.isDone("a.nt"));
+		assertFalse(cp.isDone("b.nt"));
+		assertFalse(cp.isDone("c.nt"));
+		assertEquals(0, cp.getCount("a.nt"));
+		assertEquals(1000, cp.getCount("b.nt"));
+		assertEquals(0, cp.getCount("c.nt"));
+		
+		cp.done("b.nt");
+		cp = new Checkpoint(file, "abc");
+		assertTrue(cp.isDone("b.nt"));
+		assertEquals(0, cp.getCount("b.nt"));
+	}
+	
+	@Test
+	public void testChangedZip() throws IOException {
+		Path file = tmp.getRoot().toPath().resolve("data.zip.checkpoint");
+		new Checkpoint(file, "abc").save("b.nt", 1000);
+		
+		Checkpoint cp = new Checkpoint(file, "def");
+		assertFalse(cp.isDone("a.nt"));
+		assertEquals(0, cp.getCount("b.nt"));
+	}
+	
+	@Test
+	public void testDelete() throws IOException {
+		Path file = tmp.getRoot().toPath().resolve("data.zip.checkpoint");
+		Checkpoint cp = new Checkpoint(file, "abc");
+		cp.save("b.nt", 1000);
+		cp.delete();
+		
+		assertFalse(file.toFile().exists());
+		assertEquals(0, new Checkpoint(file, "abc").getCount("b.nt"));
+	}
+}
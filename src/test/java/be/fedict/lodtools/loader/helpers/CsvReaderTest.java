@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for reading CSV files
+ * 
+ * @author Bart.Hanssens
+ */
+public class CsvReaderTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	/**
+	 * Convert a term to a value
+	 * 
+	 * @param s term
+	 * @return value
+	 */
+	private static Value value(String s) {
+		return CsvReader.toValue(s, 0, s.length(), F);
+	}
+	
+	@Test
+	public void testHeader() throws IOException {
+		try (CsvReader r = new CsvReader(new StringReader("?id, $name\r\n<http://ex.com/1>,a\n"))) {
+			assertArrayEquals(new String[] { "id", "name" }, r.readHeader());
+			assertTrue(r.next());
+			assertEquals(2, r.size());
+			assertEquals("<http://ex.com/1>", r.field(0).toString());
+			assertEquals("a", r.field(1).toString());
+			assertFalse(r.next());
+		}
+	}
+	
+	@Test
+	public void testNoHeader() throws IOException {
+		// the first line is not lost, and commas do not split the line
+		try (CsvReader r = new CsvReader(new StringReader("<http://ex.com/1>,a\nb"))) {
+			assertNull(r.readHeader());
+			assertTrue(r.next());
+			assertEquals(1, r.size());
+			assertEquals("<http://ex.com/1>,a", r.field(0).toString());
+			assertTrue(r.next());
+			assertEquals("b", r.field(0).toString());
+			assertFalse(r.next());
+		}
+		try (CsvReader r = new CsvReader(new StringReader(""))) {
+			assertNull(r.readHeader());
+			assertFalse(r.next());
+		}
+	}
+	
+	@Test
+	public void testCommas() throws IOException {
+		String csv = "?s,?o\n" 
+					+ "<http://ex.com/a,b>,\"x, \\\"y\\\", z\"@en\n"
+					+ "<http://ex.com/c>,\"1,5\"^^<http://ex.com/d,e>\n";
+		try (CsvReader r = new CsvReader(new StringReader(csv))) {
+			r.readHeader();
+			assertTrue(r.next());
+			assertEquals(2, r.size());
+			assertEquals(F.createIRI("http://ex.com/a,b"), r.getValue(0, F));
+			assertEquals(F.createLiteral("x, \"y\", z", "en"), r.getValue(1, F));
+			assertTrue(r.next());
+			assertEquals(2, r.size());
+			assertEquals(F.createLiteral("1,5", F.createIRI("http://ex.com/d,e")), 
+							r.getValue(1, F));
+		}
+	}
+	
+	@Test
+	public void testValues() {
+		assertEquals(F.createLiteral("a b"), value("a b"));
+		assertEquals(F.createLiteral("a"), value("\"a\""));
+		assertEquals(F.createLiteral("a", "nl-BE"), value("\"a\"@nl-BE"));
+		assertEquals(F.createLiteral("1", XMLSchema.INT), 
+						value("\"1\"^^<http://www.w3.org/2001/XMLSchema#int>"));
+		assertEquals(F.createLiteral("a\tb"), value("\"a\\tb\""));
+		// not well-formed, used as plain text
+		assertEquals(F.createLiteral("\"a\"^^x"), value("\"a\"^^x"));
+		assertEquals(F.createLiteral("\"a"), value("\"a"));
+	}
+	
+	@Test
+	public void testEmpty() throws IOException {
+		try (CsvReader r = new CsvReader(new StringReader("?a,?b,?c\n,  ,\n\n<http://ex.com/1>"))) {
+			r.readHeader();
+			assertTrue(r.next());
+			assertFalse(r.isEmpty());
+			assertEquals(3, r.size());
+			for (int i = 0; i < 3; i++) {
+				assertEquals(F.createLiteral(""), r.getValue(i, F));
+			}
+			assertTrue(r.next());
+			assertTrue(r.isEmpty());
+			// missing fields
+			assertTrue(r.next());
+			assertEquals(1, r.size());
+			assertEquals(F.createLiteral(""), r.getValue(2, F));
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for sorting lines using temporary files
+ * 
+ * @author Bart.Hanssens
+ */
+public class ExternalSortTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	/**
+	 * Sort lines and read the sorted output
+	 * 
+	 * @param sort external sort
+	 * @param lines lines to sort
+	 * @return sorted lines
+	 * @throws IOException 
+	 */
+	private List<String> sort(ExternalSort sort, String... lines) throws IOException {
+		for (String line: lines) {
+			sort.add(line);
+		}
+		Path out = tmp.newFile("out.gz").toPath();
+		sort.sort(out);
+		
+		List<String> res = new ArrayList<>();
+		try (BufferedReader r = ExternalSort.reader(out)) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				res.add(line);
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Count the temporary files
+	 * 
+	 * @return number of files
+	 * @throws IOException 
+	 */
+	private long countRuns() throws IOException {
+		try (Stream<Path> files = Files.list(tmp.getRoot().toPath())) {
+			return files.filter(p -> p.getFileName().toString().startsWith("sort")).count();
+		}
+	}
+	
+	@Test
+	public void testInMemory() throws IOException {
+		try (ExternalSort sort = new ExternalSort(tmp.getRoot().toPath(), 1000, 1000, true)) {
+			assertEquals(Arrays.asList("a", "b", "c"), sort(sort, "c", "a", "b", "a"));
+			assertEquals(0, countRuns());
+		}
+	}
+	
+	@Test
+	public void testMaxChars() throws IOException {
+		char[] c = new char[500];
+		Arrays.fill(c, 'x');
+		String longLine = new String(c);
+		
+		// long lines are written to temporary files, even when there are only a few
+		try (ExternalSort sort = new ExternalSort(tmp.getRoot().toPath(), 1000, 1000, false)) {
+			assertEquals(Arrays.asList("a", "b", "c" + longLine, "c" + longLine, "d" + longLine), 
+					sort(sort, "d" + longLine, "c" + longLine, "b", "c" + longLine, "a"));
+			assertEquals(2, countRuns());
+		}
+		assertEquals(0, countRuns());
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+
+import java.util.Optional;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the file name helpers
+ * 
+ * @author Bart.Hanssens
+ */
+public class FileUtilTest {
+	@Test
+	public void testRDFFormat() {
+		assertEquals(Optional.of(RDFFormat.NTRIPLES), FileUtil.getRDFFormat("data.nt"));
+		assertEquals(Optional.of(RDFFormat.NTRIPLES), FileUtil.getRDFFormat("data.NT.gz"));
+		assertEquals(Optional.of(RDFFormat.TURTLE), FileUtil.getRDFFormat("data.ttl.bz2"));
+		assertEquals(Optional.of(RDFFormat.NQUADS), FileUtil.getRDFFormat("dir/data.nq"));
+		assertEquals(Optional.of(RDFFormat.TRIG), FileUtil.getRDFFormat("data.trig"));
+		assertEquals(Optional.of(RDFFormat.RDFXML), FileUtil.getRDFFormat("data.rdf"));
+	}
+	
+	@Test
+	public void testRDFFormatRejected() {
+		// known to Rio, but not accepted
+		assertEquals(Optional.empty(), FileUtil.getRDFFormat("data.owl"));
+		assertEquals(Optional.empty(), FileUtil.getRDFFormat("data.xml"));
+		assertEquals(Optional.empty(), FileUtil.getRDFFormat("data.brf"));
+		assertEquals(Optional.empty(), FileUtil.getRDFFormat("data.nt.zip"));
+		assertEquals(Optional.empty(), FileUtil.getRDFFormat("data"));
+		assertEquals(Optional.empty(), FileUtil.getRDFFormat("data.gz"));
+	}
+	
+	@Test
+	public void testPriority() {
+		assertEquals(Priority.HIGH, FileUtil.getPriority("data.high.zip"));
+		assertEquals(Priority.LOW, FileUtil.getPriority("data.low.zip"));
+		assertEquals(Priority.NORMAL, FileUtil.getPriority("data.zip"));
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for comparing snapshots of N-Triples files
+ * 
+ * @author Bart.Hanssens
+ */
+public class GraphDiffTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private GraphDiff diff;
+	private final List<Statement> added = new ArrayList<>();
+	private final List<Statement> removed = new ArrayList<>();
+	
+	/**
+	 * Create a snapshot from a few lines of N-Triples
+	 * 
+	 * @param name snapshot file name
+	 * @param lines N-Triples lines
+	 * @return path to the snapshot
+	 * @throws IOException 
+	 */
+	private Path snapshot(String name, String... lines) throws IOException {
+		Path out = tmp.getRoot().toPath().resolve(name);
+		byte[] b = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+		diff.snapshot(new ByteArrayInputStream(b), out);
+		return out;
+	}
+	
+	/**
+	 * Compare two snapshots, collecting the differences
+	 * 
+	 * @param oldFile previous snapshot
+	 * @param newFile new snapshot
+	 * @throws IOException 
+	 */
+	private void compare(Path oldFile, Path newFile) throws IOException {
+		GraphDiff.diff(oldFile, newFile, F, new GraphDiff.DiffHandler() {
+			@Override
+			public void added(Statement st) {
+				added.add(st);
+			}
+			@Override
+			public void removed(Statement st) {
+				removed.add(st);
+			}
+		});
+	}
+	
+	private static Statement st(String s, String o) {
+		return F.createStatement(F.createIRI("http://example.com/" + s), 
+				F.createIRI("http://example.com/p"), F.createLiteral(o));
+	}
+	
+	@Before
+	public void setUp() {
+		// small sort buffer, to force merging of multiple runs
+		diff = new GraphDiff(tmp.getRoot().toPath(), 2, 1000);
+	}
+	
+	@Test
+	public void testDiff() throws IOException {
+		Path oldFile = snapshot("old.snapshot.gz",
+				"<http://example.com/c> <http://example.com/p> \"c\" .",
+				"<http://example.com/a> <http://example.com/p> \"a\" .",
+				"<http://example.com/b> <http://example.com/p> \"b\" .");
+		Path newFile = snapshot("new.snapshot.gz",
+				"<http://example.com/d> <http://example.com/p> \"d with spaces\" .",
+				"<http://example.com/a> <http://example.com/p> \"a\" .",
+				"<http://example.com/a> <http://example.com/p> \"a\" .",
+				"<http://example.com/c> <http://example.com/p> \"c\" .");
+		
+		compare(oldFile, newFile);
+		assertEquals(Arrays.asList(st("d", "d with spaces")), added);
+		assertEquals(Arrays.asList(st("b", "b")), removed);
+	}
+	
+	@Test
+	public void testNoPrevious() throws IOException {
+		Path newFile = snapshot("new.snapshot.gz",
+				"<http://example.com/b> <http://example.com/p> \"b\" .",
+				"<http://example.com/a> <http://example.com/p> \"a\" .");
+		
+		compare(tmp.getRoot().toPath().resolve("missing.snapshot.gz"), newFile);
+		assertEquals(Arrays.asList(st("a", "a"), st("b", "b")), added);
+		assertEquals(0, removed.size());
+	}
+	
+	@Test
+	public void testDedupBlankNodes() throws IOException {
+		Path out = tmp.getRoot().toPath().resolve("dedup.gz");
+		String nt = "_:b1 <http://example.com/p> _:b2 .\n"
+				+ "_:b2 <http://example.com/p> \"x\" .\n"
+				+ "_:b1 <http://example.com/p> _:b2 .\n"
+				+ "_:b3 <http://example.com/p> \"x\" .\n";
+		assertEquals(3, diff.dedup(
+			new ByteArrayInputStream(nt.getBytes(StandardCharsets.UTF_8)), out));
+		
+		Model m;
+		try (InputStream is = new GZIPInputStream(Files.newInputStream(out))) {
+			m = Rio.parse(is, "", RDFFormat.NTRIPLES);
+		}
+		assertEquals(3, m.size());
+		// the labels are still shared within the file
+		Statement link = m.stream().filter(st -> st.getObject() instanceof BNode)
+									.findFirst().orElse(null);
+		assertNotNull(link);
+		assertTrue(m.contains((Resource) link.getObject(), null, F.createLiteral("x")));
+		assertEquals(2, m.filter(null, null, F.createLiteral("x")).size());
+	}
+	
+	@Test(expected = RDFHandlerException.class)
+	public void testBlankNode() throws IOException {
+		snapshot("new.snapshot.gz", 
+				"_:b1 <http://example.com/p> \"b\" .");
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.StorageConfig;
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the job queue and its journal
+ * 
+ * @author Bart.Hanssens
+ */
+public class JobQueueTest {
+	private final static String REPO = "org";
+	private final static List<String> REPOS = Collections.singletonList(REPO);
+	
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private Path root;
+	private Repository repo;
+	private DirProcessor processor;
+	private LaneScheduler lanes;
+	private JobIndex index;
+	private JobQueue queue;
+	private final CountDownLatch gate = new CountDownLatch(1);
+	
+	/**
+	 * Create a zip file with a few triples
+	 * 
+	 * @param name file name
+	 * @throws IOException 
+	 */
+	private void zip(String name) throws IOException {
+		zip(name, "data.nt");
+	}
+	
+	/**
+	 * Create a zip file with a few triples
+	 * 
+	 * @param name file name
+	 * @param entry name of the RDF file in the zip
+	 * @throws IOException 
+	 */
+	private void zip(String name, String entry) throws IOException {
+		try (OutputStream os = Files.newOutputStream(root.resolve(REPO).resolve(name));
+			ZipOutputStream zos = new ZipOutputStream(os)) {
+			zos.putNextEntry(new ZipEntry(entry));
+			zos.write(("<http://example.com/" + name + "> <http://example.com/p> \"o\" .\n")
+									.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Create a job queue, with the lane of the repository blocked until
+	 * the gate is opened
+	 * 
+	 * @param maxQueuedBulk maximum number of waiting jobs
+	 * @throws InterruptedException 
+	 */
+	private void createQueue(int maxQueuedBulk) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		lanes.submit(REPO, () -> {
+			started.countDown();
+			try {
+				gate.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		queue = new JobQueue(root.toString(), lanes, processor, index, 
+								new MetricRegistry(), maxQueuedBulk);
+	}
+	
+	/**
+	 * Read the journal
+	 * 
+	 * @return lines
+	 * @throws IOException 
+	 */
+	private List<String> journal() throws IOException {
+		return Files.readAllLines(root.resolve(JobQueue.JOURNAL), StandardCharsets.UTF_8);
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		root = tmp.getRoot().toPath();
+		for (String d: new String[] { FileUtil.DIR_PROCESS, FileUtil.DIR_DONE, 
+								FileUtil.DIR_FAILED, FileUtil.DIR_QUERY }) {
+			Files.createDirectories(root.resolve(REPO).resolve(d));
+		}
+		repo = new SailRepository(new MemoryStore());
+		repo.initialize();
+		
+		StorageConfig cfg = new StorageConfig();
+		cfg.setProcessRoot(root.toString());
+		processor = new DirProcessor(new LoadBackend() {
+			@Override
+			public Set<String> getRepositoryNames() {
+				return Collections.singleton(REPO);
+			}
+			@Override
+			public Repository getRepository(String name) {
+				return REPO.equals(name) ? repo : null;
+			}
+			@Override
+			public void shutDown() {
+			}
+		}, cfg, new MetricRegistry());
+		lanes = new LaneScheduler(1);
+		index = new JobIndex(10);
+	}
+	
+	@After
+	public void tearDown() throws InterruptedException {
+		gate.countDown();
+		lanes.shutdown(5, TimeUnit.SECONDS);
+		if (queue != null) {
+			queue.close();
+		}
+		processor.close();
+		repo.shutDown();
+	}
+	
+	@Test
+	public void testRecover() throws Exception {
+		zip("old.low.zip");
+		zip("new.zip");
+		zip("bulk.zip");
+		Files.write(root.resolve(JobQueue.JOURNAL), Arrays.asList(
+				"QUEUED\torg\told.low.zip",
+				"QUEUED\torg\tnew.zip\tHIGH",
+				"QUEUED\torg\tgone.zip\tNORMAL",
+				"QUEUED\torg\tdone.zip\tNORMAL",
+				"DONE\torg\tdone.zip",
+				"DEFERRED\torg\tbulk.zip\tLOW"), StandardCharsets.UTF_8);
+		
+		createQueue(2);
+		queue.recover(REPOS);
+		
+		// older lines without priority use the name of the file
+		assertEquals(Priority.LOW, index.get(REPO, "old.low.zip").getPriority());
+		assertEquals(Priority.HIGH, index.get(REPO, "new.zip").getPriority());
+		assertNull(index.get(REPO, "gone.zip"));
+		assertNull(index.get(REPO, "done.zip"));
+		
+		// still deferred, with the same priority
+		assertFalse(queue.isPending(REPO, "bulk.zip"));
+		assertEquals(Priority.LOW, index.get(REPO, "bulk.zip").getPriority());
+		assertEquals(2, lanes.getQueueDepth(REPO));
+		
+		assertEquals(Arrays.asList(
+				"QUEUED\torg\told.low.zip\tLOW",
+				"QUEUED\torg\tnew.zip\tHIGH",
+				"DEFERRED\torg\tbulk.zip\tLOW"), journal());
+		assertFalse(Files.exists(root.resolve(JobQueue.JOURNAL + ".tmp")));
+	}
+	
+	@Test
+	public void testJournalError() throws Exception {
+		createQueue(2);
+		queue.recover(REPOS);
+		queue.close();
+		
+		zip("lost.zip");
+		try {
+			queue.submit(REPO, "lost.zip");
+			fail("Job queued without journal");
+		} catch (IOException ex) {
+			assertFalse(queue.isPending(REPO, "lost.zip"));
+			assertNull(index.get(REPO, "lost.zip"));
+		}
+	}
+	
+	@Test
+	public void testDeferredPriority() throws Exception {
+		createQueue(1);
+		queue.recover(REPOS);
+		
+		zip("first.zip");
+		zip("second.zip");
+		assertTrue(queue.submit(REPO, "first.zip"));
+		assertFalse(queue.submit(REPO, "first.zip"));
+		assertTrue(queue.submit(REPO, "second.zip", Priority.LOW));
+		assertFalse(queue.isPending(REPO, "second.zip"));
+		assertFalse(queue.submit(REPO, "missing.zip"));
+		
+		gate.countDown();
+		assertEquals(JobStatus.State.DONE, 
+			index.whenCompleted(REPO, "first.zip").get(5, TimeUnit.SECONDS).getState());
+		
+		// queued without a scan when the first job is done, the name would give 
+		// normal priority, but the deferred priority is kept
+		JobStatus job = index.whenCompleted(REPO, "second.zip").get(5, TimeUnit.SECONDS);
+		assertEquals(JobStatus.State.DONE, job.getState());
+		assertEquals(Priority.LOW, job.getPriority());
+		
+		assertEquals(Arrays.asList(
+				"QUEUED\torg\tfirst.zip\tNORMAL",
+				"DEFERRED\torg\tsecond.zip\tLOW",
+				"DONE\torg\tfirst.zip",
+				"QUEUED\torg\tsecond.zip\tLOW",
+				"DONE\torg\tsecond.zip"), journal());
+	}
+	
+	@Test
+	public void testReserve() throws Exception {
+		createQueue(0);
+		queue.recover(REPOS);
+		
+		assertTrue(queue.reserve(REPO, "upload.zip"));
+		assertFalse(queue.reserve(REPO, "upload.zip"));
+		
+		// still being uploaded
+		zip("upload.zip");
+		queue.scan(REPOS);
+		assertFalse(queue.isPending(REPO, "upload.zip"));
+		assertNull(index.get(REPO, "upload.zip"));
+		
+		assertTrue(queue.submit(REPO, "upload.zip", Priority.HIGH));
+		assertTrue(queue.isPending(REPO, "upload.zip"));
+		assertFalse(queue.reserve(REPO, "upload.zip"));
+		assertEquals(Priority.HIGH, index.get(REPO, "upload.zip").getPriority());
+		
+		queue.release(REPO, "other.zip");
+		assertTrue(queue.reserve(REPO, "other.zip"));
+		queue.release(REPO, "other.zip");
+		assertTrue(queue.reserve(REPO, "other.zip"));
+	}
+	
+	@Test
+	public void testRefused() throws Exception {
+		createQueue(0);
+		queue.recover(REPOS);
+		
+		zip("evil.zip", "../../data.nt");
+		zip("good.zip", "dir/data.nt");
+		assertTrue(queue.submit(REPO, "evil.zip"));
+		assertTrue(queue.submit(REPO, "good.zip"));
+		gate.countDown();
+		
+		assertEquals(JobStatus.State.FAILED, 
+			index.whenCompleted(REPO, "evil.zip").get(5, TimeUnit.SECONDS).getState());
+		assertTrue(Files.exists(root.resolve(REPO).resolve(FileUtil.DIR_FAILED)
+													.resolve("evil.zip")));
+		assertEquals(JobStatus.State.DONE, 
+			index.whenCompleted(REPO, "good.zip").get(5, TimeUnit.SECONDS).getState());
+	}
+	
+	@Test
+	public void testStream() throws Exception {
+		Path tmp = root.resolve(REPO).resolve(FileUtil.DIR_PROCESS).resolve("stream1.tmp");
+		Files.createFile(tmp);
+		createQueue(0);
+		queue.recover(REPOS);
+		assertFalse(Files.exists(tmp));
+		
+		byte[] nt = "<http://example.com/s> <http://example.com/p> \"o\" .\n"
+									.getBytes(StandardCharsets.UTF_8);
+		CompletableFuture<JobStatus> done = 
+				queue.stream(REPO, "data.nt", new ByteArrayInputStream(nt));
+		assertFalse(done.isDone());
+		
+		gate.countDown();
+		JobStatus job = done.get(5, TimeUnit.SECONDS);
+		assertEquals(JobStatus.State.DONE, job.getState());
+		assertEquals(1, job.getStatements());
+		
+		done = queue.stream("unknown", "data.nt", new ByteArrayInputStream(nt));
+		assertEquals(JobStatus.State.FAILED, done.get(5, TimeUnit.SECONDS).getState());
+	}
+}
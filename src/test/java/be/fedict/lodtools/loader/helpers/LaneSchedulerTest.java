@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import be.fedict.lodtools.loader.helpers.JobStatus.Priority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the lane scheduler
+ * 
+ * @author Bart.Hanssens
+ */
+public class LaneSchedulerTest {
+	private LaneScheduler lanes;
+	
+	private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+	
+	/**
+	 * Submit a task that keeps a thread busy until the gate is opened
+	 * 
+	 * @param repo repository name
+	 * @param priority priority
+	 * @param gate gate
+	 * @throws InterruptedException 
+	 */
+	private void block(String repo, Priority priority, CountDownLatch gate) 
+												throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		lanes.submit(repo, priority, () -> {
+			started.countDown();
+			await(gate);
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * Submit a task that records its name
+	 * 
+	 * @param repo repository name
+	 * @param priority priority
+	 * @param done counted down when the task has run
+	 */
+	private void record(String repo, Priority priority, CountDownLatch done) {
+		lanes.submit(repo, priority, () -> {
+			ran.add(repo + "-" + priority);
+			done.countDown();
+		});
+	}
+	
+	/**
+	 * Wait for a latch, without checked exception
+	 * 
+	 * @param latch latch
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@After
+	public void tearDown() throws InterruptedException {
+		lanes.shutdown(5, TimeUnit.SECONDS);
+	}
+	
+	@Test
+	public void testPriorityOrder() throws InterruptedException {
+		lanes = new LaneScheduler(1);
+		CountDownLatch gate = new CountDownLatch(1);
+		block("blocker", Priority.NORMAL, gate);
+		
+		CountDownLatch done = new CountDownLatch(6);
+		record("a", Priority.LOW, done);
+		record("b", Priority.LOW, done);
+		record("c", Priority.NORMAL, done);
+		record("a", Priority.HIGH, done);
+		record("d", Priority.HIGH, done);
+		record("b", Priority.NORMAL, done);
+		assertEquals(6, lanes.getQueueDepth());
+		assertEquals(2, lanes.getQueueDepth("a"));
+		
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("a-HIGH", "d-HIGH", "c-NORMAL", "b-NORMAL", 
+									"a-LOW", "b-LOW"), ran);
+	}
+	
+	@Test
+	public void testStaleTickets() throws InterruptedException {
+		lanes = new LaneScheduler(3);
+		CountDownLatch gate = new CountDownLatch(1);
+		block("x", Priority.NORMAL, gate);
+		block("y", Priority.NORMAL, gate);
+		block("z", Priority.NORMAL, gate);
+		
+		// the ticket for the low priority task is replaced by a high priority one
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger overlap = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(3);
+		for (Priority p: new Priority[] { Priority.LOW, Priority.HIGH, Priority.NORMAL }) {
+			lanes.submit("a", p, () -> {
+				if (running.incrementAndGet() > 1) {
+					overlap.incrementAndGet();
+				}
+				ran.add(p.toString());
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				done.countDown();
+			});
+		}
+		
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		assertEquals(Arrays.asList("HIGH", "NORMAL", "LOW"), ran);
+		assertEquals(0, overlap.get());
+		assertEquals(0, lanes.getQueueDepth());
+	}
+	
+	@Test
+	public void testBulkParking() throws InterruptedException {
+		lanes = new LaneScheduler(2, 1);
+		CountDownLatch gate = new CountDownLatch(1);
+		block("a", Priority.LOW, gate);
+		
+		// only one bulk job at a time, the other thread stays free 
+		CountDownLatch bulk = new CountDownLatch(1);
+		record("b", Priority.LOW, bulk);
+		CountDownLatch high = new CountDownLatch(1);
+		record("c", Priority.HIGH, high);
+		
+		assertTrue(high.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		assertEquals(1, bulk.getCount());
+		assertEquals(1, lanes.getQueueDepth("b"));
+		
+		gate.countDown();
+		assertTrue(bulk.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("c-HIGH", "b-LOW"), ran);
+	}
+	
+	@Test
+	public void testShutdown() throws InterruptedException {
+		lanes = new LaneScheduler(1);
+		CountDownLatch gate = new CountDownLatch(1);
+		block("a", Priority.NORMAL, gate);
+		
+		CountDownLatch done = new CountDownLatch(1);
+		record("b", Priority.NORMAL, done);
+		
+		Thread t = new Thread(() -> {
+			try {
+				lanes.shutdown(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		t.start();
+		Thread.sleep(200);
+		gate.countDown();
+		t.join(5000);
+		
+		// waiting tasks are not started once the shutdown was requested
+		assertEquals(1, done.getCount());
+		assertEquals(1, lanes.getQueueDepth("b"));
+	}
+	
+	@Test
+	public void testErrorKeepsLane() throws InterruptedException {
+		lanes = new LaneScheduler(1);
+		lanes.submit("a", () -> { 
+			throw new AssertionError("failing task"); 
+		});
+		
+		CountDownLatch done = new CountDownLatch(1);
+		record("a", Priority.NORMAL, done);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(0, lanes.getQueueDepth("a"));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for parsing N-Triples in parallel
+ * 
+ * @author Bart.Hanssens
+ */
+public class ParallelParserTest {
+	// more than one chunk
+	private final static int LINES = 25_000;
+	
+	private final ParallelParser parser = 
+			new ParallelParser(4, SimpleValueFactory.getInstance());
+	
+	/**
+	 * Create N-Triples, with the same blank node on the first and last line
+	 * 
+	 * @param last last line
+	 * @return input stream
+	 */
+	private static InputStream nt(String last) {
+		StringBuilder buf = new StringBuilder();
+		buf.append("_:b1 <http://example.com/p> \"first\" .\n");
+		for (int i = 1; i < LINES - 1; i++) {
+			buf.append("<http://example.com/").append(i)
+				.append("> <http://example.com/p> \"").append(i).append("\" .\n");
+		}
+		buf.append(last).append('\n');
+		return new ByteArrayInputStream(buf.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Parse into a list
+	 * 
+	 * @param is input stream
+	 * @return statements
+	 * @throws Exception 
+	 */
+	private List<Statement> parse(InputStream is) throws Exception {
+		List<Statement> stmts = new ArrayList<>();
+		parser.parse(is, RDFFormat.NTRIPLES, new StatementCollector(stmts));
+		return stmts;
+	}
+	
+	@Test
+	public void testOrder() throws Exception {
+		List<Statement> stmts = 
+			parse(nt("<http://example.com/last> <http://example.com/p> \"last\" ."));
+		assertEquals(LINES, stmts.size());
+		for (int i = 1; i < LINES - 1; i++) {
+			assertEquals("http://example.com/" + i, stmts.get(i).getSubject().stringValue());
+		}
+	}
+	
+	@Test
+	public void testBNodes() throws Exception {
+		String last = "_:b1 <http://example.com/p> \"last\" .";
+		List<Statement> first = parse(nt(last));
+		// same label in different chunks is the same node
+		assertEquals(first.get(0).getSubject(), first.get(LINES - 1).getSubject());
+		
+		// but not in another file
+		List<Statement> second = parse(nt(last));
+		assertNotEquals(first.get(0).getSubject(), second.get(0).getSubject());
+	}
+	
+	@Test
+	public void testLineNumber() throws Exception {
+		try {
+			parse(nt("<http://example.com/s> <http://example.com/p> ."));
+			fail("Invalid file accepted");
+		} catch (RDFParseException ex) {
+			// line in the file, not in the chunk
+			assertEquals(LINES, ex.getLineNumber());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for passing statements to a handler on a writer thread
+ * 
+ * @author Bart.Hanssens
+ */
+public class PipedHandlerTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	/**
+	 * Create a statement
+	 * 
+	 * @param i number
+	 * @return statement
+	 */
+	private static Statement stmt(int i) {
+		return F.createStatement(F.createIRI("http://example.com/" + i), 
+					F.createIRI("http://example.com/p"), F.createLiteral(i));
+	}
+	
+	@Test(timeout = 10_000)
+	public void testOrder() {
+		List<Statement> stmts = new ArrayList<>();
+		List<String> threads = new ArrayList<>();
+		StatementCollector collector = new StatementCollector(stmts) {
+			@Override
+			public void handleStatement(Statement st) {
+				threads.add(Thread.currentThread().getName());
+				super.handleStatement(st);
+			}
+		};
+		
+		try (PipedHandler handler = new PipedHandler(collector, 2)) {
+			handler.startRDF();
+			for (int i = 0; i < 5_500; i++) {
+				handler.handleStatement(stmt(i));
+			}
+			handler.endRDF();
+		}
+		assertEquals(5_500, stmts.size());
+		for (int i = 0; i < stmts.size(); i++) {
+			assertEquals(stmt(i), stmts.get(i));
+		}
+		assertFalse(threads.contains(Thread.currentThread().getName()));
+	}
+	
+	@Test(timeout = 10_000)
+	public void testWriterError() {
+		AbstractRDFHandler failing = new AbstractRDFHandler() {
+			private int count = 0;
+			
+			@Override
+			public void handleStatement(Statement st) {
+				if (++count == 1_500) {
+					throw new RDFHandlerException("Store failed");
+				}
+			}
+		};
+		
+		int sent = 0;
+		try (PipedHandler handler = new PipedHandler(failing, 2)) {
+			handler.startRDF();
+			// the parser stops while the queue is still full
+			for (int i = 0; i < 1_000_000; i++) {
+				handler.handleStatement(stmt(i));
+				sent++;
+			}
+			handler.endRDF();
+			fail("Error of the writer not passed");
+		} catch (RDFHandlerException ex) {
+			assertEquals("Store failed", ex.getMessage());
+		}
+		assertTrue(sent < 1_000_000);
+	}
+	
+	@Test(timeout = 10_000)
+	public void testWriterErrorAtEnd() {
+		AbstractRDFHandler failing = new AbstractRDFHandler() {
+			@Override
+			public void endRDF() {
+				throw new IllegalStateException("Commit failed");
+			}
+		};
+		try (PipedHandler handler = new PipedHandler(failing, 2)) {
+			handler.startRDF();
+			handler.handleStatement(stmt(1));
+			handler.endRDF();
+			fail("Error of the writer not passed");
+		} catch (RDFHandlerException ex) {
+			assertEquals("Commit failed", ex.getCause().getMessage());
+		}
+	}
+	
+	@Test(timeout = 10_000)
+	public void testClose() {
+		// e.g. when parsing failed, the writer must not wait forever
+		PipedHandler handler = new PipedHandler(new StatementCollector(), 2);
+		handler.startRDF();
+		handler.handleStatement(stmt(1));
+		handler.close();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the cache of query files
+ * 
+ * @author Bart.Hanssens
+ */
+public class QueryCacheTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private QueryCache cache;
+	
+	@Before
+	public void setUp() {
+		cache = new QueryCache();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		cache.close();
+	}
+	
+	@Test
+	public void testChanged() throws IOException, InterruptedException {
+		File f = tmp.newFile("data.qr");
+		Files.write(f.toPath(), "DELETE WHERE { ?id ?p ?o }".getBytes(StandardCharsets.UTF_8));
+		assertEquals("DELETE WHERE { ?id ?p ?o }", cache.get(f));
+		
+		Files.write(f.toPath(), "INSERT DATA { }".getBytes(StandardCharsets.UTF_8));
+		// the watcher removes the file from the cache in the background
+		String qry = cache.get(f);
+		for (int i = 0; i < 100 && !qry.equals("INSERT DATA { }"); i++) {
+			Thread.sleep(100);
+			qry = cache.get(f);
+		}
+		assertEquals("INSERT DATA { }", qry);
+	}
+	
+	@Test(expected = IOException.class)
+	public void testMissing() throws IOException {
+		cache.get(new File(tmp.getRoot(), "missing.qr"));
+	}
+}
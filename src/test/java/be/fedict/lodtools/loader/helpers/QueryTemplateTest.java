@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for filling in SPARQL update templates
+ * 
+ * @author Bart.Hanssens
+ */
+public class QueryTemplateTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	/**
+	 * Fill in a template
+	 * 
+	 * @param qry SPARQL update
+	 * @param names variable names
+	 * @param vals values
+	 * @return update
+	 */
+	private static String fill(String qry, String[] names, String... vals) {
+		StringBuilder buf = new StringBuilder();
+		new QueryTemplate(qry, names).fill(buf, vals);
+		return buf.toString();
+	}
+	
+	/**
+	 * Check that a value is rejected
+	 * 
+	 * @param val value
+	 */
+	private static void assertRejected(Value val) {
+		try {
+			QueryTemplate.toTerm(val);
+			fail("Accepted " + val);
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testFill() {
+		String[] names = { "id", "name" };
+		assertEquals("INSERT DATA { <http://ex.com/1> <http://ex.com/p> \"a\" }", 
+			fill("INSERT DATA { ?id <http://ex.com/p> $name }", names, 
+					"<http://ex.com/1>", "\"a\""));
+		// same variable twice, unknown variables are kept
+		assertEquals("INSERT { <s> <p> ?o } WHERE { <s> <q> ?o }", 
+			fill("INSERT { ?id <p> ?o } WHERE { ?id <q> ?o }", names, "<s>", "\"a\""));
+		// longer variable name with the same prefix
+		assertEquals("DELETE WHERE { <s> <p> ?identifier }", 
+			fill("DELETE WHERE { ?id <p> ?identifier }", names, "<s>", "\"a\""));
+	}
+	
+	@Test
+	public void testSkip() {
+		String[] names = { "id" };
+		assertEquals("INSERT DATA { <s> <http://ex.com/?id> \"?id\" } # ?id\n", 
+			fill("INSERT DATA { ?id <http://ex.com/?id> \"?id\" } # ?id\n", names, "<s>"));
+		assertEquals("INSERT DATA { <s> <p> '''it's ?id''' , 'a\\'?id' }", 
+			fill("INSERT DATA { ?id <p> '''it's ?id''' , 'a\\'?id' }", names, "<s>"));
+		// less than operator, not an IRI
+		assertEquals("DELETE WHERE { ?s <p> ?a FILTER(?a<1) }", 
+			fill("DELETE WHERE { ?s <p> ?a FILTER(?a<?id) }", 
+					new String[] { "id" }, "1"));
+		assertEquals("DELETE WHERE { ?s <p> 2 FILTER(2<1) }", 
+			fill("DELETE WHERE { ?s <p> ?a FILTER(?a<?id) }", 
+					new String[] { "a", "id" }, "2", "1"));
+	}
+	
+	@Test
+	public void testToTerm() {
+		assertEquals("<http://ex.com/a>", QueryTemplate.toTerm(F.createIRI("http://ex.com/a")));
+		assertEquals("\"a \\\"b\\\"\\n } ;\"", QueryTemplate.toTerm(F.createLiteral("a \"b\"\n } ;")));
+		assertEquals("\"a\"@nl-BE", QueryTemplate.toTerm(F.createLiteral("a", "nl-BE")));
+		assertEquals("\"1\"^^<http://www.w3.org/2001/XMLSchema#int>", 
+						QueryTemplate.toTerm(F.createLiteral("1", XMLSchema.INT)));
+		
+		assertRejected(F.createIRI("http://ex.com/a b"));
+		assertRejected(F.createIRI("http://ex.com/a> } ; DROP ALL ; <b"));
+		assertRejected(F.createIRI("http://ex.com/\"a\""));
+		assertRejected(F.createLiteral("a", "en } ; DROP ALL"));
+		assertRejected(F.createLiteral("1", F.createIRI("http://ex.com/a>b")));
+		assertRejected(F.createBNode("b1"));
+	}
+}
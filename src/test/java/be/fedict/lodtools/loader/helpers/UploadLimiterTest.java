@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for limiting uploads
+ * 
+ * @author Bart.Hanssens
+ */
+public class UploadLimiterTest {
+	private UploadLimiter limiter;
+	
+	/**
+	 * Read an input stream until the end
+	 * 
+	 * @param is input stream
+	 * @return number of bytes
+	 * @throws IOException 
+	 */
+	private static long read(InputStream is) throws IOException {
+		byte[] buf = new byte[1024];
+		long total = 0;
+		int n;
+		while ((n = is.read(buf)) > 0) {
+			total += n;
+		}
+		return total;
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		limiter.stop();
+	}
+	
+	@Test(timeout = 10_000)
+	public void testSlots() throws Exception {
+		limiter = new UploadLimiter(2, 0);
+		CountDownLatch gate = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(2);
+		Runnable task = () -> {
+			try {
+				gate.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			done.countDown();
+		};
+		
+		assertTrue(limiter.execute(task));
+		assertTrue(limiter.tryAcquire());
+		// all slots are used
+		assertFalse(limiter.execute(task));
+		assertFalse(limiter.tryAcquire());
+		
+		limiter.release();
+		assertTrue(limiter.execute(task));
+		assertFalse(limiter.execute(task));
+		
+		// slots are released when the tasks are done
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		while (!limiter.tryAcquire()) {
+			Thread.sleep(10);
+		}
+		assertTrue(limiter.tryAcquire());
+	}
+	
+	@Test
+	public void testUnlimitedRate() throws IOException {
+		limiter = new UploadLimiter(1, 0);
+		InputStream is = new ByteArrayInputStream(new byte[100_000]);
+		assertEquals(is, limiter.limit("repo", is));
+		assertEquals(0, limiter.getRetryAfter("repo"));
+	}
+	
+	@Test(timeout = 10_000)
+	public void testRate() throws Exception {
+		limiter = new UploadLimiter(1, 10_000);
+		assertEquals(0, limiter.getRetryAfter("repo"));
+		
+		// burst of one second, then slowed down to 10 kB per second
+		long start = System.nanoTime();
+		assertEquals(25_000, read(limiter.limit("repo", 
+								new ByteArrayInputStream(new byte[25_000]))));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1_000));
+		
+		// other repositories have their own quota
+		assertEquals(0, limiter.getRetryAfter("other"));
+		
+		// quota used up by a large read: new uploads have to wait
+		InputStream is = limiter.limit("repo", new ByteArrayInputStream(new byte[30_000]));
+		Thread reader = new Thread(() -> {
+			try {
+				is.read(new byte[30_000]);
+			} catch (IOException ex) {
+				// ignore
+			}
+		});
+		reader.start();
+		long retry = 0;
+		while (retry == 0 && reader.isAlive()) {
+			retry = limiter.getRetryAfter("repo");
+		}
+		assertTrue(retry >= 2);
+		reader.join();
+	}
+}
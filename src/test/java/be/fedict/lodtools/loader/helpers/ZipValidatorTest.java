@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.loader.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.rdf4j.rio.RDFParseException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for checking and validating the entries of a zip file
+ * 
+ * @author Bart.Hanssens
+ */
+public class ZipValidatorTest {
+	private final static String NT = 
+		"<http://example.com/s> <http://example.com/p> \"o\" .\n"
+		+ "<http://example.com/s> <http://example.com/p> \"p\" .\n";
+	
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	/**
+	 * Create a zip file
+	 * 
+	 * @param content names and contents of the entries
+	 * @return zip file
+	 * @throws IOException 
+	 */
+	private File zip(String... content) throws IOException {
+		File f = tmp.newFile();
+		try (OutputStream os = Files.newOutputStream(f.toPath());
+			ZipOutputStream zos = new ZipOutputStream(os)) {
+			for (int i = 0; i < content.length; i += 2) {
+				zos.putNextEntry(new ZipEntry(content[i]));
+				zos.write(content[i + 1].getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return f;
+	}
+	
+	/**
+	 * Check that the entries of a zip file are refused
+	 * 
+	 * @param maxSize maximum size
+	 * @param content names and contents of the entries
+	 * @throws IOException 
+	 */
+	private void assertRefused(long maxSize, String... content) throws IOException {
+		try (ZipFile zip = new ZipFile(zip(content))) {
+			ZipValidator.check(FileUtil.getEntries(zip), maxSize);
+			fail("Accepted " + content[0]);
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testCheck() throws IOException {
+		try (ZipFile zip = new ZipFile(zip("data.nt", NT, "dir/data..nt", NT))) {
+			ZipValidator.check(FileUtil.getEntries(zip), NT.length());
+			ZipValidator.check(FileUtil.getEntries(zip), 0);
+		}
+		assertRefused(0, "../data.nt", NT);
+		assertRefused(0, "dir/../../data.nt", NT);
+		assertRefused(0, "dir\\..\\..\\data.nt", NT);
+		assertRefused(0, "/tmp/data.nt", NT);
+		assertRefused(0, "C:/data.nt", NT);
+		assertRefused(NT.length() - 1, "data.nt", NT);
+	}
+	
+	@Test
+	public void testValidate() throws IOException {
+		File qryDir = tmp.newFolder();
+		Files.write(new File(qryDir, "default.qr").toPath(), 
+					Collections.singletonList("INSERT DATA { ?s <p> 1 }"));
+		
+		try (ZipFile zip = new ZipFile(zip("data.nt", NT, "data.csv", "?s\n<a>\n\n<b>\n", 
+							"data.qr", "INSERT DATA { ?s <p> 1 }", "default.csv", "<c>"))) {
+			Map<String,Long> counts = new ZipValidator(2)
+								.validate(zip, FileUtil.getEntries(zip), qryDir);
+			assertEquals(Long.valueOf(2), counts.get("data.nt"));
+			assertEquals(Long.valueOf(2), counts.get("data.csv"));
+			assertEquals(Long.valueOf(1), counts.get("default.csv"));
+			assertEquals(Long.valueOf(0), counts.get("data.qr"));
+		}
+	}
+	
+	@Test
+	public void testInvalid() throws IOException {
+		File qryDir = tmp.newFolder();
+		// object missing on line 3
+		String broken = NT + "<http://example.com/s> <http://example.com/p> .\n";
+		try (ZipFile zip = new ZipFile(zip("a.nt", NT, "b.nt", broken))) {
+			new ZipValidator(2).validate(zip, FileUtil.getEntries(zip), qryDir);
+			fail("Invalid file accepted");
+		} catch (RDFParseException ex) {
+			assertTrue(ex.getMessage().startsWith("b.nt: "));
+			assertEquals(3, ex.getLineNumber());
+		}
+		try (ZipFile zip = new ZipFile(zip("a.nt", NT, "missing.csv", "<a>"))) {
+			new ZipValidator(2).validate(zip, FileUtil.getEntries(zip), qryDir);
+			fail("CSV without query accepted");
+		} catch (IOException ex) {
+			assertEquals("No query file for missing.csv", ex.getMessage());
+		}
+	}
+}